@@ -0,0 +1,137 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ThreadFactory} for event-loop and worker threads with CPU affinity.
+ * <p>
+ * In {@link Mode#SPREAD} mode, every new thread is pinned to the next CPU of
+ * the set in turn, so that event loops are spread across cores and stay on
+ * them. In {@link Mode#SHARED} mode, every thread may run on any CPU of the
+ * set; giving a worker pool a set disjoint from the event loops' keeps the
+ * workers off the I/O cores.
+ * <p>
+ * Threads apply their affinity when they start. Where affinity is not
+ * supported, or cannot be applied, threads run unpinned.
+ */
+public final class AffinityThreadFactory implements ThreadFactory {
+    /**
+     * How the CPUs of the set are assigned to threads.
+     */
+    public enum Mode {
+        /** Each thread is pinned to one CPU, round-robin. */
+        SPREAD,
+        /** Each thread may run on all CPUs of the set. */
+        SHARED,
+    }
+
+    private final String name;
+    private final BitSet cpus;
+    private final Mode mode;
+    private final boolean daemon;
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Creates a factory for daemon threads.
+     *
+     * @param name The name prefix of the threads
+     * @param cpus The CPUs to run the threads on
+     * @param mode How the CPUs are assigned
+     */
+    public AffinityThreadFactory(String name, BitSet cpus, Mode mode) {
+        this(name, cpus, mode, true);
+    }
+
+    /**
+     * Creates a factory.
+     *
+     * @param name The name prefix of the threads
+     * @param cpus The CPUs to run the threads on
+     * @param mode How the CPUs are assigned
+     * @param daemon Whether the threads are daemon threads
+     */
+    public AffinityThreadFactory(String name, BitSet cpus, Mode mode, boolean daemon) {
+        if (cpus.isEmpty()) {
+            throw new IllegalArgumentException("CPU set may not be empty");
+        }
+        this.name = name;
+        this.cpus = (BitSet) cpus.clone();
+        this.mode = mode;
+        this.daemon = daemon;
+    }
+
+    /**
+     * Retrieves the CPUs the calling thread may run on, as a starting point
+     * for partitioning them between event loops and workers.
+     *
+     * @return The set of CPU numbers
+     * @throws IOException if the affinity could not be retrieved
+     */
+    public static BitSet availableCpus() throws IOException {
+        if (ThreadAffinity.isSupported()) {
+            return ThreadAffinity.get();
+        }
+        BitSet all = new BitSet();
+        all.set(0, Runtime.getRuntime().availableProcessors());
+        return all;
+    }
+
+    /**
+     * Retrieves the CPUs the n-th thread of this factory is assigned to.
+     *
+     * @param index The index of the thread, starting at 0
+     * @return The set of CPU numbers
+     */
+    public BitSet cpusFor(int index) {
+        if (mode == Mode.SHARED) {
+            return (BitSet) cpus.clone();
+        }
+        int cpu = cpus.nextSetBit(0);
+        for (int i = index % cpus.cardinality(); i > 0; i--) {
+            cpu = cpus.nextSetBit(cpu + 1);
+        }
+        BitSet one = new BitSet();
+        one.set(cpu);
+        return one;
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+        int index = count.getAndIncrement();
+        final BitSet assigned = cpusFor(index);
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (ThreadAffinity.isSupported()) {
+                    try {
+                        ThreadAffinity.set(assigned);
+                    } catch (IOException e) {
+                        // run unpinned, e.g. when the CPU is not in our cpuset
+                    }
+                }
+                r.run();
+            }
+        }, name + "-" + index);
+        t.setDaemon(daemon);
+        return t;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import jnr.constants.platform.Errno;
+import jnr.enxio.channels.NativeException;
+
+/**
+ * Busy-poll policy for blocking reads, see
+ * {@link UnixSocketChannel#setBusyPoll} and {@link UnixDatagramChannel#setBusyPoll}.
+ * <p>
+ * A read first polls the socket with non-blocking recv(2) for up to the
+ * spin budget, calling {@code Thread.onSpinWait()} between attempts where
+ * the JVM provides it. Only if no data arrived within the budget does it
+ * block in the kernel until the socket becomes readable. This trades CPU
+ * time of the reading thread for wakeup latency.
+ * <p>
+ * The policy counts reads that were satisfied while spinning (hits) and
+ * reads that had to block (misses). A policy may be shared by several
+ * channels, in which case the counters are aggregated.
+ */
+public final class BusyPoll {
+    static final int EXHAUSTED = -2;
+
+    private static final MethodHandle onSpinWait = findOnSpinWait();
+
+    private final long spinNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a busy-poll policy.
+     *
+     * @param budget The maximum time to spin per read
+     * @param unit The unit of budget
+     */
+    public BusyPoll(long budget, TimeUnit unit) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Invalid spin budget");
+        }
+        this.spinNanos = unit.toNanos(budget);
+    }
+
+    private static MethodHandle findOnSpinWait() {
+        try {
+            return MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            // Java 8, spin without a hint
+            return null;
+        }
+    }
+
+    private static void spinWait() {
+        if (null != onSpinWait) {
+            try {
+                onSpinWait.invokeExact();
+            } catch (Throwable t) {
+                throw new AssertionError(t);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the spin budget per read.
+     *
+     * @param unit The unit of the result
+     * @return The budget
+     */
+    public long getBudget(TimeUnit unit) {
+        return unit.convert(spinNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retrieves the number of reads that found data while spinning.
+     *
+     * @return The hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Retrieves the number of reads that exhausted the spin budget and blocked.
+     *
+     * @return The miss count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Retrieves the fraction of reads that found data while spinning.
+     *
+     * @return The hit rate between 0 and 1, or 0 if nothing was read yet
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Resets the hit and miss counters.
+     */
+    public void reset() {
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * Polls a socket until data arrives or the budget is used up.
+     *
+     * @param addr The source address to fill in, or null for recv(2)
+     * @return The result of recv(2), or {@link #EXHAUSTED}
+     */
+    int spin(int fd, ByteBuffer dst, SockAddrUnix addr) throws IOException {
+        long start = System.nanoTime();
+        for (;;) {
+            int n = null == addr
+                    ? Native.recv(fd, dst, Native.MSG_DONTWAIT)
+                    : Native.recvfrom(fd, dst, addr, Native.MSG_DONTWAIT);
+            if (n >= 0) {
+                hits.increment();
+                return n;
+            }
+            Errno error = Native.getLastError();
+            if (error != Errno.EAGAIN && error != Errno.EWOULDBLOCK) {
+                throw new NativeException(Native.getLastErrorString(), error);
+            }
+            if (System.nanoTime() - start >= spinNanos) {
+                misses.increment();
+                return EXHAUSTED;
+            }
+            spinWait();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * I/O counters of a channel.
+ * <p>
+ * Counting is off unless enabled with {@link UnixSocketChannel#setStats} or
+ * {@link UnixDatagramChannel#setStats}, and an instance may be shared by
+ * several channels to count them together. The counters are striped, so that
+ * channels used by different threads do not contend on them.
+ * <p>
+ * Read and write operations on a channel usually map to one system call each,
+ * except for scattering reads and gathering writes, which are counted once,
+ * and operations served in memory by a {@link UnixSocketChannel#loopbackPair()}.
+ * Truncated datagrams are detected by {@code receive} and {@code tryReceive}
+ * on Linux.
+ *
+ * @see ChannelStatsRegistry
+ */
+public final class ChannelStats implements ChannelStatsMXBean {
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder readCalls = new LongAdder();
+    private final LongAdder writeCalls = new LongAdder();
+    private final LongAdder wouldBlock = new LongAdder();
+    private final LongAdder partialWrites = new LongAdder();
+    private final LongAdder shortReads = new LongAdder();
+    private final LongAdder truncatedDatagrams = new LongAdder();
+
+    /**
+     * Records a stream read.
+     *
+     * @param requested The space remaining in the buffers
+     * @param n The result of the read, 0 if it would block or -1 at end-of-stream
+     */
+    void read(long requested, long n) {
+        readCalls.increment();
+        if (n > 0) {
+            bytesRead.add(n);
+            if (n < requested) {
+                shortReads.increment();
+            }
+        } else if (n == 0 && requested > 0) {
+            wouldBlock.increment();
+        }
+    }
+
+    /**
+     * Records a received datagram.
+     *
+     * @param requested The space remaining in the buffer
+     * @param n The length of the datagram, which may exceed the space
+     */
+    void received(long requested, long n) {
+        readCalls.increment();
+        bytesRead.add(Math.min(n, requested));
+        if (n > requested) {
+            truncatedDatagrams.increment();
+        } else if (n < requested) {
+            shortReads.increment();
+        }
+    }
+
+    /**
+     * Records an operation that found the socket not ready.
+     *
+     * @param write true for a write, false for a read
+     */
+    void wouldBlock(boolean write) {
+        (write ? writeCalls : readCalls).increment();
+        wouldBlock.increment();
+    }
+
+    /**
+     * Records a write.
+     *
+     * @param requested The number of bytes to write
+     * @param n The number of bytes written
+     */
+    void write(long requested, long n) {
+        writeCalls.increment();
+        if (n > 0) {
+            bytesWritten.add(n);
+            if (n < requested) {
+                partialWrites.increment();
+            }
+        } else if (requested > 0) {
+            wouldBlock.increment();
+        }
+    }
+
+    /**
+     * Adds the counters of another instance to this one.
+     */
+    void add(ChannelStats other) {
+        bytesRead.add(other.getBytesRead());
+        bytesWritten.add(other.getBytesWritten());
+        readCalls.add(other.getReadCalls());
+        writeCalls.add(other.getWriteCalls());
+        wouldBlock.add(other.getWouldBlock());
+        partialWrites.add(other.getPartialWrites());
+        shortReads.add(other.getShortReads());
+        truncatedDatagrams.add(other.getTruncatedDatagrams());
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getReadCalls() {
+        return readCalls.sum();
+    }
+
+    @Override
+    public long getWriteCalls() {
+        return writeCalls.sum();
+    }
+
+    @Override
+    public long getWouldBlock() {
+        return wouldBlock.sum();
+    }
+
+    @Override
+    public long getPartialWrites() {
+        return partialWrites.sum();
+    }
+
+    @Override
+    public long getShortReads() {
+        return shortReads.sum();
+    }
+
+    @Override
+    public long getTruncatedDatagrams() {
+        return truncatedDatagrams.sum();
+    }
+
+    /**
+     * Resets all counters to zero. Operations in progress may be counted
+     * partially.
+     */
+    public void reset() {
+        bytesRead.reset();
+        bytesWritten.reset();
+        readCalls.reset();
+        writeCalls.reset();
+        wouldBlock.reset();
+        partialWrites.reset();
+        shortReads.reset();
+        truncatedDatagrams.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelStats[in=" + getBytesRead() + ", out=" + getBytesWritten()
+                + ", reads=" + getReadCalls() + ", writes=" + getWriteCalls()
+                + ", wouldBlock=" + getWouldBlock() + "]";
+    }
+}
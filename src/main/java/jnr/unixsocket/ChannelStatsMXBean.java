@@ -0,0 +1,46 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+/**
+ * The I/O counters of a channel, or of a group of channels, as exposed over JMX.
+ */
+public interface ChannelStatsMXBean {
+    /** @return The number of bytes read or received */
+    long getBytesRead();
+
+    /** @return The number of bytes written or sent */
+    long getBytesWritten();
+
+    /** @return The number of read and receive operations */
+    long getReadCalls();
+
+    /** @return The number of write and send operations */
+    long getWriteCalls();
+
+    /** @return The number of operations that found the socket not ready (EAGAIN) */
+    long getWouldBlock();
+
+    /** @return The number of writes that transferred some, but not all bytes */
+    long getPartialWrites();
+
+    /** @return The number of reads that did not fill the buffer */
+    long getShortReads();
+
+    /** @return The number of datagrams truncated to fit the receive buffer */
+    long getTruncatedDatagrams();
+}
@@ -0,0 +1,252 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Named {@link ChannelStats}, rolled up into totals.
+ * <p>
+ * The totals include the counts of unregistered channels, so that they never
+ * decrease. Once {@link #registerMBeans()} has been called, the registry and
+ * each of its counters are published as MXBeans on the platform MBean server,
+ * as {@code jnr.unixsocket:type=ChannelStatsRegistry,name=<registry>} and
+ * {@code jnr.unixsocket:type=ChannelStats,registry=<registry>,name=<channel>}.
+ */
+public final class ChannelStatsRegistry implements ChannelStatsRegistryMXBean {
+    private static final String DOMAIN = "jnr.unixsocket";
+
+    private final String name;
+    private final Map<String, ChannelStats> stats = new ConcurrentHashMap<String, ChannelStats>();
+    private final ChannelStats retired = new ChannelStats();
+    private MBeanServer server;
+
+    /**
+     * Creates a registry.
+     *
+     * @param name The name of the registry, used in the MXBean names
+     */
+    public ChannelStatsRegistry(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the counters registered under a name, creating them first
+     * if necessary.
+     *
+     * @param channelName The name
+     * @return The counters
+     */
+    public synchronized ChannelStats register(String channelName) {
+        ChannelStats s = stats.get(channelName);
+        if (null == s) {
+            s = new ChannelStats();
+            stats.put(channelName, s);
+            if (null != server) {
+                registerMBean(channelObjectName(channelName), s);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Removes the counters registered under a name, adding their counts to
+     * the totals of the registry.
+     *
+     * @param channelName The name
+     */
+    public synchronized void unregister(String channelName) {
+        ChannelStats s = stats.remove(channelName);
+        if (null != s) {
+            retired.add(s);
+            if (null != server) {
+                unregisterMBean(channelObjectName(channelName));
+            }
+        }
+    }
+
+    /**
+     * Retrieves the counters registered under a name.
+     *
+     * @param channelName The name
+     * @return The counters, or null if not registered
+     */
+    public ChannelStats get(String channelName) {
+        return stats.get(channelName);
+    }
+
+    /**
+     * Publishes this registry and its counters on the platform MBean server.
+     *
+     * @throws JMException if an MXBean could not be registered
+     */
+    public synchronized void registerMBeans() throws JMException {
+        if (null != server) {
+            return;
+        }
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        mbs.registerMBean(this, objectName());
+        server = mbs;
+        for (Map.Entry<String, ChannelStats> e : stats.entrySet()) {
+            registerMBean(channelObjectName(e.getKey()), e.getValue());
+        }
+    }
+
+    /**
+     * Removes this registry and its counters from the platform MBean server.
+     */
+    public synchronized void unregisterMBeans() {
+        if (null == server) {
+            return;
+        }
+        for (String channelName : stats.keySet()) {
+            unregisterMBean(channelObjectName(channelName));
+        }
+        unregisterMBean(objectName());
+        server = null;
+    }
+
+    /**
+     * Retrieves the name under which this registry is published.
+     *
+     * @return The object name
+     */
+    public ObjectName objectName() {
+        return objectName("type=ChannelStatsRegistry,name=" + ObjectName.quote(name));
+    }
+
+    private ObjectName channelObjectName(String channelName) {
+        return objectName("type=ChannelStats,registry=" + ObjectName.quote(name)
+                + ",name=" + ObjectName.quote(channelName));
+    }
+
+    private static ObjectName objectName(String properties) {
+        try {
+            return new ObjectName(DOMAIN + ":" + properties);
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private void registerMBean(ObjectName objectName, ChannelStats s) {
+        try {
+            server.registerMBean(s, objectName);
+        } catch (JMException e) {
+            // a stale bean of the same name, the counters stay readable here
+        }
+    }
+
+    private void unregisterMBean(ObjectName objectName) {
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            // already gone
+        }
+    }
+
+    @Override
+    public String[] getChannelNames() {
+        return stats.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public int getChannelCount() {
+        return stats.size();
+    }
+
+    @Override
+    public long getBytesRead() {
+        long n = retired.getBytesRead();
+        for (ChannelStats s : stats.values()) {
+            n += s.getBytesRead();
+        }
+        return n;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        long n = retired.getBytesWritten();
+        for (ChannelStats s : stats.values()) {
+            n += s.getBytesWritten();
+        }
+        return n;
+    }
+
+    @Override
+    public long getReadCalls() {
+        long n = retired.getReadCalls();
+        for (ChannelStats s : stats.values()) {
+            n += s.getReadCalls();
+        }
+        return n;
+    }
+
+    @Override
+    public long getWriteCalls() {
+        long n = retired.getWriteCalls();
+        for (ChannelStats s : stats.values()) {
+            n += s.getWriteCalls();
+        }
+        return n;
+    }
+
+    @Override
+    public long getWouldBlock() {
+        long n = retired.getWouldBlock();
+        for (ChannelStats s : stats.values()) {
+            n += s.getWouldBlock();
+        }
+        return n;
+    }
+
+    @Override
+    public long getPartialWrites() {
+        long n = retired.getPartialWrites();
+        for (ChannelStats s : stats.values()) {
+            n += s.getPartialWrites();
+        }
+        return n;
+    }
+
+    @Override
+    public long getShortReads() {
+        long n = retired.getShortReads();
+        for (ChannelStats s : stats.values()) {
+            n += s.getShortReads();
+        }
+        return n;
+    }
+
+    @Override
+    public long getTruncatedDatagrams() {
+        long n = retired.getTruncatedDatagrams();
+        for (ChannelStats s : stats.values()) {
+            n += s.getTruncatedDatagrams();
+        }
+        return n;
+    }
+}
@@ -16,29 +16,13 @@
 
 package jnr.unixsocket;
 
-import jnr.ffi.Struct;
-
 /**
- * Native structure for SCM_CREDENTIALS. See 'man 7 unix'.
+ * The totals of a {@link ChannelStatsRegistry}, as exposed over JMX.
  */
-final class Ucred extends Struct {
-    final pid_t pid = new pid_t();
-    final uid_t uid = new uid_t();
-    final gid_t gid = new gid_t();
-
-    public Ucred() {
-        super(jnr.ffi.Runtime.getSystemRuntime());
-    }
-
-    pid_t getPidField() {
-        return pid;
-    }
-
-    uid_t getUidField() {
-        return uid;
-    }
+public interface ChannelStatsRegistryMXBean extends ChannelStatsMXBean {
+    /** @return The names of the registered counters */
+    String[] getChannelNames();
 
-    gid_t getGidField() {
-        return gid;
-    }
+    /** @return The number of registered counters */
+    int getChannelCount();
 }
@@ -21,13 +21,18 @@ package jnr.unixsocket;
 import java.io.File;
 import java.io.IOException;
 import java.net.SocketOption;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
 
+import jnr.constants.platform.Errno;
 import jnr.constants.platform.ProtocolFamily;
 import jnr.constants.platform.SocketLevel;
 
+import jnr.enxio.channels.NativeException;
 import jnr.ffi.Platform;
 import jnr.ffi.Platform.OS;
 import jnr.ffi.byref.IntByReference;
@@ -70,29 +75,109 @@ final class Common {
 
     static UnixSocketAddress getsockname(int sockfd) {
         UnixSocketAddress local = new UnixSocketAddress();
-        SockAddrUnix addr = local.getStruct();
-        IntByReference len = new IntByReference(addr.getMaximumLength());
-
-        if (Native.libc().getsockname(sockfd, addr, len) < 0) {
+        if (Native.getsockname(sockfd, local.getStruct()) < 0) {
             throw new Error(Native.getLastErrorString());
         }
-        addr.updatePath(len.getValue());
         return local;
     }
 
     static UnixSocketAddress getpeername(int sockfd) {
         UnixSocketAddress remote = new UnixSocketAddress();
-        SockAddrUnix addr = remote.getStruct();
-        IntByReference len = new IntByReference(addr.getMaximumLength());
-
-        if (Native.libc().getpeername(sockfd, addr, len) < 0) {
+        if (Native.getpeername(sockfd, remote.getStruct()) < 0) {
             throw new Error(Native.getLastErrorString());
         }
-        addr.updatePath(len.getValue());
         return remote;
     }
 
+    /**
+     * Maps the result of a send(2) or recv(2) call made with MSG_DONTWAIT.
+     *
+     * @param n The value returned by the call
+     * @return n, or 0 if the call would have blocked
+     * @throws IOException if the call failed for any other reason
+     */
+    static int dontWaitResult(int n) throws IOException {
+        if (n < 0) {
+            Errno error = Native.getLastError();
+            if (error == Errno.EAGAIN || error == Errno.EWOULDBLOCK) {
+                return 0;
+            }
+            throw new NativeException(Native.getLastErrorString(), error);
+        }
+        return n;
+    }
+
+    static void attachFilter(int fd, SocketFilter filter) throws IOException {
+        if (null == filter) {
+            throw new IllegalArgumentException("filter may not be null");
+        }
+        checkFilterSupport();
+        jnr.ffi.Runtime runtime = jnr.ffi.Runtime.getSystemRuntime();
+        if (0 != Native.libsocket().setsockopt(fd, SocketLevel.SOL_SOCKET.intValue(),
+                jnr.constants.platform.SocketOption.SO_ATTACH_FILTER.intValue(),
+                filter.toNative(runtime), SocketFilter.fprogSize(runtime))) {
+            throw new IOException(Native.getLastErrorString());
+        }
+    }
+
+    static void detachFilter(int fd) throws IOException {
+        checkFilterSupport();
+        if (0 != Native.setsockopt(fd, SocketLevel.SOL_SOCKET,
+                jnr.constants.platform.SocketOption.SO_DETACH_FILTER, 0)) {
+            throw new IOException(Native.getLastErrorString());
+        }
+    }
+
+    static void lockFilter(int fd) throws IOException {
+        checkFilterSupport();
+        if (!jnr.constants.platform.SocketOption.SO_LOCK_FILTER.defined()) {
+            throw new UnsupportedOperationException("SO_LOCK_FILTER is not supported on this platform");
+        }
+        if (0 != Native.setsockopt(fd, SocketLevel.SOL_SOCKET,
+                jnr.constants.platform.SocketOption.SO_LOCK_FILTER, 1)) {
+            throw new IOException(Native.getLastErrorString());
+        }
+    }
+
+    private static void checkFilterSupport() {
+        if (!jnr.constants.platform.SocketOption.SO_ATTACH_FILTER.defined()) {
+            throw new UnsupportedOperationException("socket filters are not supported on this platform");
+        }
+    }
+
+    /**
+     * Checks whether a channel accepts the given option.
+     *
+     * @param supported The options supported by the channel
+     * @param name The option
+     * @return true for supported and raw options
+     */
+    static boolean isSupported(Set<SocketOption<?>> supported, SocketOption<?> name) {
+        return supported.contains(name) || name instanceof UnixSocketOptions.RawOption;
+    }
+
+    /**
+     * Adds those options to the given set which are available on this platform.
+     *
+     * @param set The set to add the options to
+     * @param options The options to add
+     */
+    static void addDefined(Set<SocketOption<?>> set, SocketOption<?>... options) {
+        for (SocketOption<?> option : options) {
+            jnr.constants.platform.SocketOption optname = rMap.get(option);
+            if (null == optname) {
+                optname = wMap.get(option);
+            }
+            if (null != optname && optname.defined()) {
+                set.add(option);
+            }
+        }
+    }
+
     static <T> T getSocketOption(int fd, SocketOption<?> name) throws IOException {
+        if (name instanceof UnixSocketOptions.RawOption) {
+            return (T) getRawOption(fd, (UnixSocketOptions.RawOption) name);
+        }
         jnr.constants.platform.SocketOption optname = rMap.get(name);
         if (null == optname) {
             throw new AssertionError("Option not found");
@@ -113,6 +198,11 @@ final class Common {
             throw new IllegalArgumentException("Invalid option value");
         }
 
+        if (name instanceof UnixSocketOptions.RawOption) {
+            setRawOption(fd, (UnixSocketOptions.RawOption) name, (byte[]) value);
+            return;
+        }
+
         jnr.constants.platform.SocketOption optname = wMap.get(name);
         if (null == optname) {
             throw new AssertionError("Option not found or not writable");
@@ -130,7 +220,8 @@ final class Common {
             optvalue = ((Boolean)value).booleanValue() ? 1 : 0;
         }
 
-        if (name == UnixSocketOptions.SO_RCVBUF || name == UnixSocketOptions.SO_SNDBUF) {
+        if (name == UnixSocketOptions.SO_RCVBUF || name == UnixSocketOptions.SO_SNDBUF
+                || name == UnixSocketOptions.SO_RCVBUFFORCE || name == UnixSocketOptions.SO_SNDBUFFORCE) {
             int i = ((Integer)value).intValue();
             if (i < 0) {
                 throw new IllegalArgumentException("Invalid send/receive buffer size");
@@ -149,6 +240,22 @@ final class Common {
         }
     }
 
+    private static byte[] getRawOption(int fd, UnixSocketOptions.RawOption name) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(name.maxLength);
+        IntByReference len = new IntByReference(name.maxLength);
+        if (0 != Native.libsocket().getsockopt(fd, name.level, name.optname, buf, len)) {
+            throw new IOException(Native.getLastErrorString());
+        }
+        return Arrays.copyOf(buf.array(), Math.min(len.getValue(), name.maxLength));
+    }
+
+    private static void setRawOption(int fd, UnixSocketOptions.RawOption name, byte[] value) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(value);
+        if (0 != Native.libsocket().setsockopt(fd, name.level, name.optname, buf, value.length)) {
+            throw new IOException(Native.getLastErrorString());
+        }
+    }
+
     private static final Map<SocketOption<?>,jnr.constants.platform.SocketOption> wMap = new HashMap<>();
     private static final Map<SocketOption<?>,jnr.constants.platform.SocketOption> rMap = new HashMap<>();
     static {
@@ -158,8 +265,15 @@ final class Common {
         wMap.put(UnixSocketOptions.SO_SNDTIMEO, jnr.constants.platform.SocketOption.SO_SNDTIMEO);
         wMap.put(UnixSocketOptions.SO_KEEPALIVE, jnr.constants.platform.SocketOption.SO_KEEPALIVE);
         wMap.put(UnixSocketOptions.SO_PASSCRED, jnr.constants.platform.SocketOption.SO_PASSCRED);
+        wMap.put(UnixSocketOptions.SO_RCVLOWAT, jnr.constants.platform.SocketOption.SO_RCVLOWAT);
+        wMap.put(UnixSocketOptions.SO_PEEK_OFF, jnr.constants.platform.SocketOption.SO_PEEK_OFF);
+        wMap.put(UnixSocketOptions.SO_TIMESTAMPNS, jnr.constants.platform.SocketOption.SO_TIMESTAMPNS);
         
         rMap.putAll(wMap);
         rMap.put(UnixSocketOptions.SO_PEERCRED, jnr.constants.platform.SocketOption.SO_PEERCRED);
+
+        // The kernel does not report these, read SO_SNDBUF/SO_RCVBUF instead
+        wMap.put(UnixSocketOptions.SO_SNDBUFFORCE, jnr.constants.platform.SocketOption.SO_SNDBUFFORCE);
+        wMap.put(UnixSocketOptions.SO_RCVBUFFORCE, jnr.constants.platform.SocketOption.SO_RCVBUFFORCE);
     }
 }
@@ -32,10 +32,14 @@ import jnr.constants.platform.SocketOption;
  * <b>See also:</b> <a href="http://man7.org/linux/man-pages/man7/socket.7.html">socket (7)</a>
  */
 public final class Credentials {
-    private final Ucred ucred;
+    private final int pid;
+    private final int uid;
+    private final int gid;
 
-    Credentials(Ucred ucred) {
-        this.ucred = ucred;
+    Credentials(int pid, int uid, int gid) {
+        this.pid = pid;
+        this.uid = uid;
+        this.gid = gid;
     }
 
     /**
@@ -43,7 +47,7 @@ public final class Credentials {
      * @return The PID.
      */
     public int getPid() {
-        return ucred.getPidField().intValue();
+        return pid;
     }
 
     /**
@@ -51,7 +55,7 @@ public final class Credentials {
      * @return The EUID.
      */
     public int getUid() {
-        return ucred.getUidField().intValue();
+        return uid;
     }
 
     /**
@@ -59,7 +63,7 @@ public final class Credentials {
      * @return The EGID.
      */
     public int getGid() {
-        return ucred.getGidField().intValue();
+        return gid;
     }
 
     /**
@@ -71,12 +75,12 @@ public final class Credentials {
     }
 
     static Credentials getCredentials(int fd) {
-        Ucred c = new Ucred();
-        int error = Native.getsockopt(fd, SocketLevel.SOL_SOCKET, SocketOption.SO_PEERCRED, c);
+        int[] ucred = new int[3];
+        int error = Native.getucred(fd, SocketLevel.SOL_SOCKET, SocketOption.SO_PEERCRED, ucred);
         if (error != 0) {
             throw new UnsupportedOperationException(Native.getLastErrorString());
         }
 
-        return new Credentials(c);
+        return new Credentials(ucred[0], ucred[1], ucred[2]);
     }
 }
@@ -0,0 +1,565 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.IllegalSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.nio.channels.spi.AbstractSelectionKey;
+import java.nio.channels.spi.AbstractSelector;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import jnr.constants.platform.Errno;
+import jnr.enxio.channels.NativeException;
+import jnr.enxio.channels.NativeSelectableChannel;
+import jnr.enxio.channels.NativeSelectorProvider;
+import jnr.ffi.Memory;
+import jnr.ffi.Platform;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+
+/**
+ * A {@link Selector} over Linux epoll(7), see {@link EPollSelectorProvider}.
+ * <p>
+ * Registered keys are found through an open-addressed table indexed by file
+ * descriptor, so the cost of a selection operation depends on the number of
+ * ready channels only. Besides the regular selected-key set, ready keys can
+ * be collected into a caller-supplied array with {@link #poll}, which does
+ * not allocate.
+ */
+public final class EPollSelector extends AbstractSelector {
+    private static final Runtime runtime = Runtime.getSystemRuntime();
+
+    private static final int EPOLLIN = 0x001;
+    private static final int EPOLLOUT = 0x004;
+    private static final int EPOLLERR = 0x008;
+    private static final int EPOLLHUP = 0x010;
+    private static final int EPOLLET = 1 << 31;
+    private static final int EPOLL_CTL_ADD = 1;
+    private static final int EPOLL_CTL_DEL = 2;
+    private static final int EPOLL_CTL_MOD = 3;
+    private static final int O_CLOEXEC = 0x80000;
+
+    // struct epoll_event is packed on x86_64 only
+    private static final boolean PACKED = Platform.getNativePlatform().getCPU() == Platform.CPU.X86_64;
+    private static final int EVENT_SIZE = PACKED ? 12 : 16;
+    private static final int EVENT_DATA = PACKED ? 4 : 8;
+    private static final int MAX_EVENTS = 1024;
+
+    private final boolean edgeTriggered;
+    private final int epfd;
+    private final int wakeupfd;
+    private final Pointer events = Memory.allocateDirect(runtime, MAX_EVENTS * EVENT_SIZE);
+    private final Pointer ctlEvent = Memory.allocateDirect(runtime, EVENT_SIZE);
+    private final Pointer counter = Memory.allocateDirect(runtime, 8);
+    private final Pointer increment = Memory.allocateDirect(runtime, 8);
+    // Guards wakeupfd against a close, after which its number may be reused
+    private final Object wakeupLock = new Object();
+    private boolean wakeupClosed = false;
+    private final KeyIndex index = new KeyIndex();
+    private final Set<SelectionKey> keys = new HashSet<SelectionKey>();
+    private final Set<SelectionKey> publicKeys = Collections.unmodifiableSet(keys);
+    private final Set<SelectionKey> selected = new HashSet<SelectionKey>();
+    private final Set<SelectionKey> publicSelected = new UngrowableSet(selected);
+
+    EPollSelector(boolean edgeTriggered) throws IOException {
+        super(NativeSelectorProvider.getInstance());
+        if (Platform.getNativePlatform().getOS() != Platform.OS.LINUX) {
+            throw new UnsupportedOperationException("epoll is only supported on Linux");
+        }
+        this.edgeTriggered = edgeTriggered;
+        epfd = Native.libc().epoll_create1(O_CLOEXEC);
+        if (epfd < 0) {
+            throw new IOException("epoll_create1 failed: " + Native.getLastErrorString());
+        }
+        wakeupfd = Native.libc().eventfd(0, O_CLOEXEC | Native.LibC.O_NONBLOCK);
+        if (wakeupfd < 0) {
+            Native.libc().close(epfd);
+            throw new IOException("eventfd failed: " + Native.getLastErrorString());
+        }
+        ctl(EPOLL_CTL_ADD, wakeupfd, EPOLLIN);
+    }
+
+    /**
+     * Checks whether this selector registers channels edge-triggered.
+     *
+     * @return true if edge-triggered
+     */
+    public boolean isEdgeTriggered() {
+        return edgeTriggered;
+    }
+
+    private void ctl(int op, int fd, int ops) throws IOException {
+        ctlEvent.putInt(0, ops);
+        ctlEvent.putLongLong(EVENT_DATA, fd);
+        if (Native.libc().epoll_ctl(epfd, op, fd, ctlEvent) < 0) {
+            throw new NativeException("epoll_ctl failed: " + Native.getLastErrorString(), Native.getLastError());
+        }
+    }
+
+    private int toEvents(int ops) {
+        int ev = 0;
+        if ((ops & (SelectionKey.OP_READ | SelectionKey.OP_ACCEPT)) != 0) {
+            ev |= EPOLLIN;
+        }
+        if ((ops & (SelectionKey.OP_WRITE | SelectionKey.OP_CONNECT)) != 0) {
+            ev |= EPOLLOUT;
+        }
+        return edgeTriggered ? ev | EPOLLET : ev;
+    }
+
+    private static int toReadyOps(int ev, int interest) {
+        int ops = 0;
+        if ((ev & (EPOLLERR | EPOLLHUP)) != 0) {
+            return interest;
+        }
+        if ((ev & EPOLLIN) != 0) {
+            ops |= SelectionKey.OP_READ | SelectionKey.OP_ACCEPT;
+        }
+        if ((ev & EPOLLOUT) != 0) {
+            ops |= SelectionKey.OP_WRITE | SelectionKey.OP_CONNECT;
+        }
+        return ops & interest;
+    }
+
+    @Override
+    protected SelectionKey register(AbstractSelectableChannel ch, int ops, Object att) {
+        if (!(ch instanceof NativeSelectableChannel)) {
+            throw new IllegalSelectorException();
+        }
+        int fd = ((NativeSelectableChannel) ch).getFD();
+        Key k = new Key(this, ch, fd, ops);
+        // Locks are always taken in the order cancelled keys, index, keys
+        synchronized (cancelledKeys()) {
+            synchronized (index) {
+                ensureOpen();
+                // A descriptor of a closed channel may have been reused already
+                processCancelled();
+                try {
+                    ctl(EPOLL_CTL_ADD, fd, toEvents(ops));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("cannot register channel: " + e.getMessage(), e);
+                }
+                index.put(fd, k);
+                synchronized (keys) {
+                    keys.add(k);
+                }
+            }
+        }
+        k.attach(att);
+        return k;
+    }
+
+    void setInterest(Key k, int ops) {
+        synchronized (index) {
+            ensureOpen();
+            if (index.get(k.fd) != k) {
+                return;
+            }
+            try {
+                ctl(EPOLL_CTL_MOD, k.fd, toEvents(ops));
+            } catch (IOException e) {
+                // The descriptor was closed; the key is cancelled on close
+            }
+        }
+    }
+
+    private void ensureOpen() {
+        if (!isOpen()) {
+            throw new ClosedSelectorException();
+        }
+    }
+
+    private void processCancelled() {
+        Set<SelectionKey> cancelled = cancelledKeys();
+        synchronized (cancelled) {
+            if (cancelled.isEmpty()) {
+                return;
+            }
+            synchronized (index) {
+                for (SelectionKey sk : cancelled) {
+                    Key k = (Key) sk;
+                    if (index.get(k.fd) == k) {
+                        index.remove(k.fd);
+                        // Fails with EBADF if the channel was closed, which removed it already
+                        Native.libc().epoll_ctl(epfd, EPOLL_CTL_DEL, k.fd, ctlEvent);
+                    }
+                    synchronized (keys) {
+                        keys.remove(k);
+                    }
+                    selected.remove(k);
+                    deregister(k);
+                }
+                cancelled.clear();
+            }
+        }
+    }
+
+    private int waitForEvents(long timeout, int maxEvents) throws IOException {
+        ensureOpen();
+        processCancelled();
+        int n;
+        try {
+            begin();
+            do {
+                n = Native.libc().epoll_wait(epfd, events, maxEvents, (int) Math.min(timeout, Integer.MAX_VALUE));
+            } while (n < 0 && Errno.EINTR.equals(Native.getLastError()) && timeout < 0);
+        } finally {
+            end();
+        }
+        if (n < 0) {
+            if (Errno.EINTR.equals(Native.getLastError())) {
+                return 0;
+            }
+            throw new IOException("epoll_wait failed: " + Native.getLastErrorString());
+        }
+        processCancelled();
+        return n;
+    }
+
+    private Key readyKey(int i) {
+        int fd = (int) events.getLongLong(i * EVENT_SIZE + EVENT_DATA);
+        if (fd == wakeupfd) {
+            Native.libc().read(wakeupfd, counter, 8);
+            return null;
+        }
+        Key k = index.get(fd);
+        if (null == k || !k.isValid()) {
+            return null;
+        }
+        int ready = toReadyOps(events.getInt(i * EVENT_SIZE), k.interestOps);
+        return ready != 0 ? k.ready(ready) : null;
+    }
+
+    private int doSelect(long timeout) throws IOException {
+        synchronized (this) {
+            synchronized (publicSelected) {
+                int n = waitForEvents(timeout, MAX_EVENTS);
+                int updated = 0;
+                synchronized (index) {
+                    for (int i = 0; i < n; i++) {
+                        Key k = readyKey(i);
+                        if (null == k) {
+                            continue;
+                        }
+                        if (selected.add(k)) {
+                            k.readyOps = k.pending;
+                            updated++;
+                        } else if ((k.readyOps | k.pending) != k.readyOps) {
+                            k.readyOps |= k.pending;
+                            updated++;
+                        }
+                    }
+                }
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Waits for ready channels and stores their keys in an array, bypassing
+     * the selected-key set. The ready set of each stored key is replaced by
+     * the operations found ready.
+     *
+     * @param ready The array to store the ready keys into
+     * @param timeout The maximum time to wait in milliseconds, 0 to return
+     *        immediately or a negative value to wait indefinitely
+     * @return The number of keys stored
+     * @throws IOException if an I/O error occurs
+     */
+    public int poll(SelectionKey[] ready, long timeout) throws IOException {
+        synchronized (this) {
+            // Events fetched but not stored would be lost, which stalls edge-triggered channels
+            int n = waitForEvents(timeout, Math.max(1, Math.min(ready.length, MAX_EVENTS)));
+            int count = 0;
+            synchronized (index) {
+                for (int i = 0; i < n && count < ready.length; i++) {
+                    Key k = readyKey(i);
+                    if (null != k) {
+                        k.readyOps = k.pending;
+                        ready[count++] = k;
+                    }
+                }
+            }
+            return count;
+        }
+    }
+
+    @Override
+    public Set<SelectionKey> keys() {
+        ensureOpen();
+        return publicKeys;
+    }
+
+    @Override
+    public Set<SelectionKey> selectedKeys() {
+        ensureOpen();
+        return publicSelected;
+    }
+
+    @Override
+    public int selectNow() throws IOException {
+        return doSelect(0L);
+    }
+
+    @Override
+    public int select(long timeout) throws IOException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Negative timeout");
+        }
+        return doSelect(timeout == 0 ? -1L : timeout);
+    }
+
+    @Override
+    public int select() throws IOException {
+        return doSelect(-1L);
+    }
+
+    @Override
+    public Selector wakeup() {
+        synchronized (wakeupLock) {
+            if (!wakeupClosed) {
+                increment.putLongLong(0, 1);
+                Native.libc().write(wakeupfd, increment, 8);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    protected void implCloseSelector() throws IOException {
+        wakeup();
+        synchronized (this) {
+            synchronized (cancelledKeys()) {
+                synchronized (index) {
+                    SelectionKey[] all;
+                    synchronized (keys) {
+                        all = keys.toArray(new SelectionKey[keys.size()]);
+                    }
+                    for (SelectionKey k : all) {
+                        k.cancel();
+                    }
+                    processCancelled();
+                    synchronized (wakeupLock) {
+                        wakeupClosed = true;
+                        Native.libc().close(wakeupfd);
+                    }
+                    Native.libc().close(epfd);
+                }
+            }
+        }
+    }
+
+    /**
+     * A selection key, identified by the channel's file descriptor.
+     */
+    static final class Key extends AbstractSelectionKey {
+        private final EPollSelector selector;
+        private final SelectableChannel channel;
+        final int fd;
+        volatile int interestOps;
+        int readyOps = 0;
+        int pending = 0;
+
+        Key(EPollSelector selector, SelectableChannel channel, int fd, int ops) {
+            this.selector = selector;
+            this.channel = channel;
+            this.fd = fd;
+            this.interestOps = ops;
+        }
+
+        Key ready(int ops) {
+            pending = ops;
+            return this;
+        }
+
+        @Override
+        public SelectableChannel channel() {
+            return channel;
+        }
+
+        @Override
+        public Selector selector() {
+            return selector;
+        }
+
+        @Override
+        public int interestOps() {
+            if (!isValid()) {
+                throw new CancelledKeyException();
+            }
+            return interestOps;
+        }
+
+        @Override
+        public SelectionKey interestOps(int ops) {
+            if (!isValid()) {
+                throw new CancelledKeyException();
+            }
+            if ((ops & ~channel.validOps()) != 0) {
+                throw new IllegalArgumentException("Invalid interest ops");
+            }
+            interestOps = ops;
+            selector.setInterest(this, ops);
+            return this;
+        }
+
+        @Override
+        public int readyOps() {
+            if (!isValid()) {
+                throw new CancelledKeyException();
+            }
+            return readyOps;
+        }
+    }
+
+    /**
+     * Open-addressed table from file descriptor to key, with linear probing.
+     */
+    static final class KeyIndex {
+        private static final int FREE = -1;
+        private int[] fds = newTable(64);
+        private Key[] values = new Key[64];
+        private int size = 0;
+
+        private static int[] newTable(int capacity) {
+            int[] t = new int[capacity];
+            java.util.Arrays.fill(t, FREE);
+            return t;
+        }
+
+        private static int slot(int fd, int mask) {
+            return (fd * 0x9E3779B9) >>> 7 & mask;
+        }
+
+        Key get(int fd) {
+            int mask = fds.length - 1;
+            for (int i = slot(fd, mask); fds[i] != FREE; i = (i + 1) & mask) {
+                if (fds[i] == fd) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        void put(int fd, Key k) {
+            if ((size + 1) * 2 > fds.length) {
+                resize(fds.length * 2);
+            }
+            int mask = fds.length - 1;
+            int i = slot(fd, mask);
+            while (fds[i] != FREE && fds[i] != fd) {
+                i = (i + 1) & mask;
+            }
+            if (fds[i] == FREE) {
+                size++;
+            }
+            fds[i] = fd;
+            values[i] = k;
+        }
+
+        void remove(int fd) {
+            int mask = fds.length - 1;
+            int i = slot(fd, mask);
+            while (fds[i] != fd) {
+                if (fds[i] == FREE) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            fds[i] = FREE;
+            values[i] = null;
+            size--;
+            // Shift back the following entries of the cluster
+            for (int j = (i + 1) & mask; fds[j] != FREE; j = (j + 1) & mask) {
+                int home = slot(fds[j], mask);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    fds[i] = fds[j];
+                    values[i] = values[j];
+                    fds[j] = FREE;
+                    values[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void resize(int capacity) {
+            int[] oldFds = fds;
+            Key[] oldValues = values;
+            fds = newTable(capacity);
+            values = new Key[capacity];
+            size = 0;
+            for (int i = 0; i < oldFds.length; i++) {
+                if (oldFds[i] != FREE) {
+                    put(oldFds[i], oldValues[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * The selected-key set: keys may be removed, but not added.
+     */
+    private static final class UngrowableSet extends java.util.AbstractSet<SelectionKey> {
+        private final Set<SelectionKey> set;
+
+        UngrowableSet(Set<SelectionKey> set) {
+            this.set = set;
+        }
+
+        @Override
+        public int size() {
+            return set.size();
+        }
+
+        @Override
+        public java.util.Iterator<SelectionKey> iterator() {
+            return set.iterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return set.contains(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return set.remove(o);
+        }
+
+        @Override
+        public void clear() {
+            set.clear();
+        }
+
+        @Override
+        public boolean add(SelectionKey k) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.net.ProtocolFamily;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.AbstractSelector;
+import java.nio.channels.spi.SelectorProvider;
+
+/**
+ * A {@link SelectorProvider} whose selectors use Linux epoll(7).
+ * <p>
+ * The channels of this library belong to jnr-enxio's
+ * {@link jnr.enxio.channels.NativeSelectorProvider}, so the selectors opened
+ * here report that provider from {@link java.nio.channels.Selector#provider()},
+ * which lets the channels be registered with them as usual.
+ */
+public final class EPollSelectorProvider extends SelectorProvider {
+    private static final class SingletonHolder {
+        static final EPollSelectorProvider INSTANCE = new EPollSelectorProvider();
+    }
+
+    private EPollSelectorProvider() {
+    }
+
+    public static EPollSelectorProvider getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Opens a level-triggered epoll selector.
+     *
+     * @throws UnsupportedOperationException if epoll is not available
+     */
+    @Override
+    public AbstractSelector openSelector() throws IOException {
+        return new EPollSelector(false);
+    }
+
+    /**
+     * Opens an epoll selector.
+     *
+     * @param edgeTriggered Whether channels are registered edge-triggered.
+     *        An edge-triggered key is only selected again after new data has
+     *        arrived or buffer space has been freed, so ready channels must be
+     *        read or written until the operation would block.
+     * @return The selector
+     * @throws UnsupportedOperationException if epoll is not available
+     * @throws IOException if the selector could not be opened
+     */
+    public EPollSelector openSelector(boolean edgeTriggered) throws IOException {
+        return new EPollSelector(edgeTriggered);
+    }
+
+    @Override
+    public DatagramChannel openDatagramChannel() throws IOException {
+        return UnixDatagramChannel.open();
+    }
+
+    @Override
+    public DatagramChannel openDatagramChannel(ProtocolFamily family) throws IOException {
+        throw new UnsupportedOperationException("protocol families are not supported");
+    }
+
+    @Override
+    public Pipe openPipe() throws IOException {
+        throw new UnsupportedOperationException("pipes are not supported");
+    }
+
+    /**
+     * Not supported, {@link UnixServerSocketChannel} is no {@link ServerSocketChannel};
+     * use {@link UnixServerSocketChannel#open()}.
+     */
+    @Override
+    public ServerSocketChannel openServerSocketChannel() throws IOException {
+        throw new UnsupportedOperationException("use UnixServerSocketChannel.open()");
+    }
+
+    @Override
+    public SocketChannel openSocketChannel() throws IOException {
+        return UnixSocketChannel.open();
+    }
+}
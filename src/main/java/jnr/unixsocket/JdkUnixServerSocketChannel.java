@@ -0,0 +1,75 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import jnr.enxio.channels.NativeSelectorProvider;
+
+/**
+ * A {@link UnixServerSocketChannel} delegating to a JDK AF_UNIX
+ * {@link ServerSocketChannel}, accepting {@link JdkUnixSocketChannel}s.
+ * <p>
+ * It has no file descriptor of its own, so it cannot be registered with the
+ * selectors of this library, nor be bound in abstract namespace. See
+ * {@link UnixServerSocketChannel#openJdk()}.
+ */
+final class JdkUnixServerSocketChannel extends UnixServerSocketChannel {
+    private final ServerSocketChannel channel;
+
+    JdkUnixServerSocketChannel() throws IOException {
+        super(NativeSelectorProvider.getInstance(), -1);
+        this.channel = JdkUnixSockets.openServerSocketChannel();
+    }
+
+    @Override
+    public ServerSocketChannel getJdkChannel() {
+        return channel;
+    }
+
+    @Override
+    protected void implConfigureBlocking(boolean block) throws IOException {
+        channel.configureBlocking(block);
+    }
+
+    @Override
+    protected void implCloseSelectableChannel() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    UnixSocketAddress bind(UnixSocketAddress local, int backlog) throws IOException {
+        channel.bind(JdkUnixSockets.toJdk(local), backlog);
+        return JdkUnixSockets.fromJdk(channel.getLocalAddress());
+    }
+
+    @Override
+    public UnixSocketChannel accept() throws IOException {
+        Object event = SocketEvents.begin(SocketEvents.ACCEPT);
+        SocketChannel client = null;
+        try {
+            client = channel.accept();
+        } finally {
+            if (null != client || isBlocking()) {
+                SocketEvents.commit(SocketEvents.ACCEPT, event, this, null, 0);
+            }
+        }
+        return null == client ? null : new JdkUnixSocketChannel(client);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnsupportedAddressTypeException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A {@link UnixSocketChannel} delegating to a JDK AF_UNIX {@link SocketChannel}.
+ * <p>
+ * It has no file descriptor of its own, so it can neither be registered with
+ * the selectors of this library nor be used with operations that need one,
+ * like socket filters, credentials, kernel timestamps or non-blocking reads
+ * of a blocking channel. See {@link UnixSocketChannel#openJdk()}.
+ */
+final class JdkUnixSocketChannel extends UnixSocketChannel {
+    private static final Set<SocketOption<?>> OPTIONS;
+
+    static {
+        HashSet<SocketOption<?>> set = new HashSet<SocketOption<?>>(2);
+        set.add(UnixSocketOptions.SO_SNDBUF);
+        set.add(UnixSocketOptions.SO_RCVBUF);
+        OPTIONS = Collections.unmodifiableSet(set);
+    }
+
+    private final SocketChannel channel;
+
+    JdkUnixSocketChannel() throws IOException {
+        this(JdkUnixSockets.openSocketChannel());
+    }
+
+    JdkUnixSocketChannel(SocketChannel channel) {
+        super(-1, State.IDLE, false);
+        this.channel = channel;
+    }
+
+    @Override
+    public SocketChannel getJdkChannel() {
+        return channel;
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("not supported by channels delegating to the JDK");
+    }
+
+    /**
+     * Channels delegating to the JDK have no file descriptor.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public int getFD() {
+        throw unsupported();
+    }
+
+    @Override
+    protected void implConfigureBlocking(boolean block) throws IOException {
+        channel.configureBlocking(block);
+    }
+
+    @Override
+    protected void implCloseSelectableChannel() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public SocketChannel shutdownInput() throws IOException {
+        channel.shutdownInput();
+        return this;
+    }
+
+    @Override
+    public SocketChannel shutdownOutput() throws IOException {
+        channel.shutdownOutput();
+        return this;
+    }
+
+    @Override
+    public boolean connect(UnixSocketAddress remote) throws IOException {
+        Object event = SocketEvents.begin(SocketEvents.CONNECT);
+        try {
+            return channel.connect(JdkUnixSockets.toJdk(remote));
+        } finally {
+            SocketEvents.commit(SocketEvents.CONNECT, event, this, remote, 0);
+        }
+    }
+
+    @Override
+    boolean isBound() {
+        try {
+            return null != channel.getLocalAddress();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return channel.isConnected();
+    }
+
+    @Override
+    public boolean isConnectionPending() {
+        return channel.isConnectionPending();
+    }
+
+    @Override
+    public boolean finishConnect() throws IOException {
+        return channel.finishConnect();
+    }
+
+    @Override
+    public UnixSocketAddress getRemoteSocketAddress() {
+        try {
+            return JdkUnixSockets.fromJdk(channel.getRemoteAddress());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public UnixSocketAddress getLocalSocketAddress() {
+        try {
+            return JdkUnixSockets.fromJdk(channel.getLocalAddress());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() throws IOException {
+        return JdkUnixSockets.fromJdk(channel.getRemoteAddress());
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() throws IOException {
+        return JdkUnixSockets.fromJdk(channel.getLocalAddress());
+    }
+
+    @Override
+    long readImpl(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        return channel.read(dsts, offset, length);
+    }
+
+    @Override
+    int readImpl(ByteBuffer dst) throws IOException {
+        return channel.read(dst);
+    }
+
+    @Override
+    long writeImpl(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        return channel.write(srcs, offset, length);
+    }
+
+    @Override
+    int writeImpl(ByteBuffer src) throws IOException {
+        return channel.write(src);
+    }
+
+    /**
+     * Reads without blocking; only supported while the channel is in
+     * non-blocking mode.
+     */
+    @Override
+    int tryReadImpl(ByteBuffer dst) throws IOException {
+        if (isBlocking()) {
+            throw unsupported();
+        }
+        return channel.read(dst);
+    }
+
+    /**
+     * Writes without blocking; only supported while the channel is in
+     * non-blocking mode.
+     */
+    @Override
+    int tryWriteImpl(ByteBuffer src) throws IOException {
+        if (isBlocking()) {
+            throw unsupported();
+        }
+        return channel.write(src);
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+        return OPTIONS;
+    }
+
+    @Override
+    public <T> T getOption(SocketOption<T> name) throws IOException {
+        return name.type().cast(channel.getOption(jdkOption(name)));
+    }
+
+    @Override
+    public <T> SocketChannel setOption(SocketOption<T> name, T value) throws IOException {
+        if (name == null) {
+            throw new IllegalArgumentException("name may not be null");
+        }
+        channel.setOption(jdkOption(name), (Integer) value);
+        return this;
+    }
+
+    private static SocketOption<Integer> jdkOption(SocketOption<?> name) {
+        if (name == UnixSocketOptions.SO_SNDBUF) {
+            return StandardSocketOptions.SO_SNDBUF;
+        } else if (name == UnixSocketOptions.SO_RCVBUF) {
+            return StandardSocketOptions.SO_RCVBUF;
+        }
+        throw new UnsupportedOperationException("'" + name + "' not supported");
+    }
+
+    @Override
+    public synchronized UnixSocketChannel bind(SocketAddress local) throws IOException {
+        if (null != local && !(local instanceof UnixSocketAddress)) {
+            throw new UnsupportedAddressTypeException();
+        }
+        channel.bind(JdkUnixSockets.toJdk((UnixSocketAddress) local));
+        return this;
+    }
+}
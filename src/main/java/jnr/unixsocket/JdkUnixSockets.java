@@ -0,0 +1,160 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnsupportedAddressTypeException;
+
+/**
+ * Access to the AF_UNIX support of the JDK's own socket channels, added in
+ * JDK 16 (JEP 380).
+ * <p>
+ * Used by {@link UnixSocketChannel#openJdk()} and
+ * {@link UnixServerSocketChannel#openJdk()}, which return channels backed by a
+ * JDK {@link SocketChannel} and {@link ServerSocketChannel}, so that stream
+ * sockets get the JDK's buffer caches and park virtual threads instead of
+ * pinning their carriers.
+ * <p>
+ * This library is built for Java 8, so the JDK API is looked up reflectively.
+ */
+final class JdkUnixSockets {
+    private static final MethodHandle OF;
+    private static final MethodHandle GET_PATH;
+    private static final MethodHandle OPEN;
+    private static final MethodHandle OPEN_SERVER;
+
+    static {
+        MethodHandle of = null;
+        MethodHandle getPath = null;
+        MethodHandle open = null;
+        MethodHandle openServer = null;
+        try {
+            Class<?> addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            of = lookup.findStatic(addressClass, "of", MethodType.methodType(addressClass, String.class))
+                    .asType(MethodType.methodType(SocketAddress.class, String.class));
+            getPath = lookup.findVirtual(addressClass, "getPath", MethodType.methodType(java.nio.file.Path.class))
+                    .asType(MethodType.methodType(Object.class, SocketAddress.class));
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            open = MethodHandles.insertArguments(lookup.findStatic(SocketChannel.class, "open",
+                    MethodType.methodType(SocketChannel.class, ProtocolFamily.class)), 0, unix);
+            openServer = MethodHandles.insertArguments(lookup.findStatic(ServerSocketChannel.class, "open",
+                    MethodType.methodType(ServerSocketChannel.class, ProtocolFamily.class)), 0, unix);
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            // before JDK 16
+            of = null;
+        }
+        OF = of;
+        GET_PATH = getPath;
+        OPEN = open;
+        OPEN_SERVER = openServer;
+    }
+
+    private JdkUnixSockets() {
+    }
+
+    /**
+     * Checks whether the JDK supports AF_UNIX socket channels.
+     *
+     * @return true on JDK 16 and later
+     */
+    static boolean isSupported() {
+        return null != OF;
+    }
+
+    private static void checkSupported() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("AF_UNIX socket channels require JDK 16 or later");
+        }
+    }
+
+    static boolean isAbstract(UnixSocketAddress address) {
+        return address.path().indexOf('\000') == 0;
+    }
+
+    static SocketChannel openSocketChannel() throws IOException {
+        checkSupported();
+        try {
+            return (SocketChannel) OPEN.invokeExact();
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static ServerSocketChannel openServerSocketChannel() throws IOException {
+        checkSupported();
+        try {
+            return (ServerSocketChannel) OPEN_SERVER.invokeExact();
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Converts an address into a JDK <tt>UnixDomainSocketAddress</tt>.
+     *
+     * @param address The address, or null
+     * @return The JDK address, or null
+     * @throws UnsupportedAddressTypeException if the address is in abstract namespace
+     */
+    static SocketAddress toJdk(UnixSocketAddress address) {
+        if (null == address) {
+            return null;
+        }
+        if (isAbstract(address)) {
+            throw new UnsupportedAddressTypeException();
+        }
+        try {
+            return (SocketAddress) OF.invokeExact(address.path());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Converts a JDK <tt>UnixDomainSocketAddress</tt> into an address.
+     *
+     * @param address The JDK address, or null
+     * @return The address, or null
+     */
+    static UnixSocketAddress fromJdk(SocketAddress address) {
+        if (null == address) {
+            return null;
+        }
+        try {
+            return new UnixSocketAddress(GET_PATH.invokeExact(address).toString());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.nio.ByteBuffer;
+
+import jnr.ffi.Pointer;
+
+/**
+ * A {@link NativeBackend} calling libc through jnr-ffi.
+ */
+final class JnrBackend implements NativeBackend {
+    private final Native.LibC libc;
+
+    JnrBackend(Native.LibC libc) {
+        this.libc = libc;
+    }
+
+    @Override
+    public int socket(int domain, int type, int protocol) {
+        return libc.socket(domain, type, protocol);
+    }
+
+    @Override
+    public int socketpair(int domain, int type, int protocol, int[] sv) {
+        return libc.socketpair(domain, type, protocol, sv);
+    }
+
+    @Override
+    public int bind(int fd, SockAddrUnix addr, int len) {
+        return libc.bind(fd, addr, len);
+    }
+
+    @Override
+    public int connect(int fd, SockAddrUnix addr, int len) {
+        return libc.connect(fd, addr, len);
+    }
+
+    @Override
+    public int listen(int fd, int backlog) {
+        return libc.listen(fd, backlog);
+    }
+
+    @Override
+    public int accept(int fd, Pointer addr, Pointer len) {
+        return libc.accept(fd, addr, len);
+    }
+
+    @Override
+    public int getsockname(int fd, Pointer addr, Pointer len) {
+        return libc.getsockname(fd, addr, len);
+    }
+
+    @Override
+    public int getpeername(int fd, Pointer addr, Pointer len) {
+        return libc.getpeername(fd, addr, len);
+    }
+
+    @Override
+    public int setsockopt(int fd, int level, int optname, Pointer optval, int optlen) {
+        return libc.setsockopt(fd, level, optname, optval, optlen);
+    }
+
+    @Override
+    public int getsockopt(int fd, int level, int optname, Pointer optval, Pointer optlen) {
+        return libc.getsockopt(fd, level, optname, optval, optlen);
+    }
+
+    @Override
+    public int read(int fd, ByteBuffer dst, int size) {
+        return libc.read(fd, dst, size);
+    }
+
+    @Override
+    public int write(int fd, ByteBuffer src, int size) {
+        return libc.write(fd, src, size);
+    }
+
+    @Override
+    public int send(int fd, ByteBuffer src, int size, int flags) {
+        return libc.send(fd, src, size, flags);
+    }
+
+    @Override
+    public int recv(int fd, ByteBuffer dst, int size, int flags) {
+        return libc.recv(fd, dst, size, flags);
+    }
+
+    @Override
+    public int sendto(int fd, ByteBuffer src, int size, int flags, SockAddrUnix addr, int len) {
+        return libc.sendto(fd, src, size, flags, addr, len);
+    }
+
+    @Override
+    public int recvfrom(int fd, ByteBuffer dst, int size, int flags, Pointer addr, Pointer len) {
+        return libc.recvfrom(fd, dst, size, flags, addr, len);
+    }
+}
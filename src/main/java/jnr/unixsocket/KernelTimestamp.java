@@ -0,0 +1,94 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+/**
+ * The time at which the kernel queued a received message on the socket, as
+ * reported with SO_TIMESTAMPNS (or SO_TIMESTAMP).
+ * <p>
+ * Instances are mutable and filled in by the timestamp variants of the
+ * receive methods, so that a single instance can be reused for every
+ * message. The time is relative to the epoch, like
+ * {@link System#currentTimeMillis()}.
+ *
+ * @see UnixSocketOptions#SO_TIMESTAMPNS
+ */
+public final class KernelTimestamp {
+    private long seconds;
+    private long nanos;
+    private boolean valid;
+
+    /**
+     * Creates a new, invalid timestamp.
+     */
+    public KernelTimestamp() {
+    }
+
+    /**
+     * Tells whether the last received message carried a timestamp.
+     * This is false if neither SO_TIMESTAMPNS nor SO_TIMESTAMP is enabled.
+     *
+     * @return true if this timestamp is valid
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Retrieves the seconds part of this timestamp.
+     *
+     * @return The seconds since the epoch
+     */
+    public long getSeconds() {
+        return seconds;
+    }
+
+    /**
+     * Retrieves the nanoseconds part of this timestamp.
+     *
+     * @return The nanoseconds within the second
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Retrieves this timestamp in nanoseconds since the epoch.
+     *
+     * @return The nanoseconds since the epoch
+     */
+    public long toNanos() {
+        return seconds * 1000000000L + nanos;
+    }
+
+    void set(long seconds, long nanos) {
+        this.seconds = seconds;
+        this.nanos = nanos;
+        this.valid = true;
+    }
+
+    void clear() {
+        this.seconds = 0;
+        this.nanos = 0;
+        this.valid = false;
+    }
+
+    @Override
+    public String toString() {
+        return valid ? String.format("%d.%09d", seconds, nanos) : "[invalid]";
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * In-memory transport for a pair of connected {@link UnixSocketChannel}s
+ * created by {@link UnixSocketChannel#loopbackPair()}.
+ * <p>
+ * Each direction is a byte ring guarded by monitors: one for its reader and
+ * one for its writer, so the two ends do not contend with each other, and
+ * blocked callers wait on the ring itself. It is not lock-free. While
+ * attached, neither socket of the underlying socketpair carries any data.
+ * The pair detaches as soon as either end is switched to non-blocking mode,
+ * so the in-memory path is only ever taken by blocking callers and never
+ * under a selector.
+ * <p>
+ * On {@link #detach()} the bytes still in the rings are written into the
+ * sockets, after which both ends use the sockets only. Readers are let
+ * through to the sockets before the rings are drained, and a ring holds no
+ * more than the smallest default socket buffer (8 KiB on macOS), so
+ * detaching does not block on a peer that is itself waiting to read.
+ */
+final class LoopbackPair {
+    static final int DETACHED = -2;
+    private static final int CAPACITY = 4 * 1024;
+    private static final int MASK = CAPACITY - 1;
+
+    private final Ring[] rings = { new Ring(), new Ring() };
+    private final UnixSocketChannel[] channels;
+    private volatile boolean detached = false;
+    private volatile boolean drained = false;
+
+    private LoopbackPair(UnixSocketChannel[] channels) {
+        this.channels = channels;
+    }
+
+    /**
+     * Attaches an in-memory transport to a freshly created socketpair.
+     *
+     * @param channels The connected channels
+     */
+    static void attach(UnixSocketChannel[] channels) {
+        LoopbackPair pair = new LoopbackPair(channels);
+        channels[0].setLoopback(pair.new End(pair.rings[1], pair.rings[0]));
+        channels[1].setLoopback(pair.new End(pair.rings[0], pair.rings[1]));
+    }
+
+    /**
+     * Moves the buffered bytes into the sockets and switches both ends to them.
+     *
+     * @throws IOException if the buffered bytes could not be written
+     */
+    void detach() throws IOException {
+        if (drained) {
+            return;
+        }
+        // Writers wait until the rings are drained, so nothing overtakes the
+        // buffered bytes; readers only need to be out of the rings before
+        // they switch to the sockets, where they consume what is drained.
+        synchronized (rings[0].writeLock) {
+            synchronized (rings[1].writeLock) {
+                synchronized (rings[0].readLock) {
+                    synchronized (rings[1].readLock) {
+                        if (detached) {
+                            return;
+                        }
+                        detached = true;
+                    }
+                }
+                rings[0].signal();
+                rings[1].signal();
+                rings[0].drain(channels[0].nativeFD());
+                rings[1].drain(channels[1].nativeFD());
+                drained = true;
+            }
+        }
+    }
+
+    /**
+     * One end of the pair: reads from one ring and writes to the other.
+     */
+    final class End {
+        private final Ring in;
+        private final Ring out;
+
+        End(Ring in, Ring out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        boolean isAttached() {
+            return !detached;
+        }
+
+        void detach() throws IOException {
+            LoopbackPair.this.detach();
+        }
+
+        /**
+         * @return The number of bytes read, or {@link #DETACHED}
+         */
+        int read(ByteBuffer dst, boolean block) throws IOException {
+            for (;;) {
+                synchronized (in.readLock) {
+                    if (detached) {
+                        return DETACHED;
+                    }
+                    int n = in.poll(dst);
+                    if (n > 0 || !block || !dst.hasRemaining()) {
+                        return n;
+                    }
+                }
+                in.awaitReadable();
+            }
+        }
+
+        /**
+         * @return The number of bytes written, or {@link #DETACHED} if
+         *         nothing was written before the pair was detached
+         */
+        int write(ByteBuffer src, boolean block) throws IOException {
+            int total = 0;
+            for (;;) {
+                synchronized (out.writeLock) {
+                    if (detached) {
+                        return total > 0 ? total : DETACHED;
+                    }
+                    total += out.offer(src);
+                    if (!block || !src.hasRemaining()) {
+                        return total;
+                    }
+                }
+                out.awaitWritable();
+            }
+        }
+
+        long read(ByteBuffer[] dsts, int offset, int length, boolean block) throws IOException {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                if (!dsts[i].hasRemaining()) {
+                    continue;
+                }
+                int n = read(dsts[i], block && total == 0);
+                if (n == DETACHED) {
+                    return total > 0 ? total : DETACHED;
+                }
+                total += n;
+                if (dsts[i].hasRemaining()) {
+                    break;
+                }
+            }
+            return total;
+        }
+
+        long write(ByteBuffer[] srcs, int offset, int length, boolean block) throws IOException {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                int n = write(srcs[i], block);
+                if (n == DETACHED) {
+                    return total > 0 ? total : DETACHED;
+                }
+                total += n;
+                if (srcs[i].hasRemaining()) {
+                    break;
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * A byte ring with one reader and one writer. head and tail only grow;
+     * the reader publishes head, the writer publishes tail.
+     */
+    final class Ring {
+        final Object readLock = new Object();
+        final Object writeLock = new Object();
+        private final byte[] buf = new byte[CAPACITY];
+        private volatile long head = 0;
+        private volatile long tail = 0;
+        private volatile int waiters = 0;
+
+        int poll(ByteBuffer dst) {
+            long h = head;
+            int n = (int) Math.min(tail - h, dst.remaining());
+            if (n == 0) {
+                return 0;
+            }
+            int off = (int) (h & MASK);
+            int first = Math.min(n, CAPACITY - off);
+            dst.put(buf, off, first);
+            if (n > first) {
+                dst.put(buf, 0, n - first);
+            }
+            head = h + n;
+            signal();
+            return n;
+        }
+
+        int offer(ByteBuffer src) {
+            long t = tail;
+            int n = (int) Math.min(CAPACITY - (t - head), src.remaining());
+            if (n == 0) {
+                return 0;
+            }
+            int off = (int) (t & MASK);
+            int first = Math.min(n, CAPACITY - off);
+            src.get(buf, off, first);
+            if (n > first) {
+                src.get(buf, 0, n - first);
+            }
+            tail = t + n;
+            signal();
+            return n;
+        }
+
+        void drain(int fd) throws IOException {
+            while (tail != head) {
+                int off = (int) (head & MASK);
+                int len = (int) Math.min(tail - head, CAPACITY - off);
+                ByteBuffer chunk = ByteBuffer.wrap(buf, off, len);
+                while (chunk.hasRemaining()) {
+                    if (Native.send(fd, chunk) < 0) {
+                        throw new IOException(Native.getLastErrorString());
+                    }
+                }
+                head += len;
+            }
+        }
+
+        void signal() {
+            if (waiters > 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        void awaitReadable() throws InterruptedIOException {
+            synchronized (this) {
+                waiters++;
+                try {
+                    while (tail == head && !detached) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                } finally {
+                    waiters--;
+                }
+            }
+        }
+
+        void awaitWritable() throws InterruptedIOException {
+            synchronized (this) {
+                waiters++;
+                try {
+                    while (tail - head == CAPACITY && !detached) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                } finally {
+                    waiters--;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import jnr.constants.platform.Errno;
+import jnr.constants.platform.SocketControlMessage;
+import jnr.constants.platform.SocketLevel;
+import jnr.ffi.Memory;
+import jnr.ffi.Platform;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+import jnr.ffi.Struct;
+
+/**
+ * Per-thread native memory for recvmsg(2), laid out as the Linux
+ * struct msghdr, followed by one struct iovec, a sockaddr_un, the
+ * control message buffer and a payload buffer for heap destinations.
+ * The payload buffer grows up to {@link #MAX_DATA} bytes; a larger heap
+ * destination is received through native memory allocated for that call
+ * only, since a datagram must be received in one call.
+ */
+final class MessageHeader {
+    private static final Runtime runtime = Runtime.getSystemRuntime();
+    private static final int P = runtime.addressSize();
+
+    // struct msghdr
+    private static final int MSG_NAME = 0;
+    private static final int MSG_NAMELEN = P;
+    private static final int MSG_IOV = 2 * P;
+    private static final int MSG_IOVLEN = 3 * P;
+    private static final int MSG_CONTROL = 4 * P;
+    private static final int MSG_CONTROLLEN = 5 * P;
+    private static final int MSG_FLAGS = 6 * P;
+
+    private static final int IOV = 7 * P;
+    private static final int NAME = IOV + 2 * P;
+    private static final int NAME_SIZE = SockAddrUnix.HEADER_LENGTH + SockAddrUnix.ADDR_LENGTH;
+    private static final int CONTROL = align(NAME + NAME_SIZE);
+    private static final int CONTROL_SIZE = 64;
+    private static final int DATA = CONTROL + CONTROL_SIZE;
+    static final int MAX_DATA = 64 * 1024;
+
+    // struct cmsghdr: size_t cmsg_len, int cmsg_level, int cmsg_type, data
+    private static final int CMSG_LEVEL = P;
+    private static final int CMSG_TYPE = P + 4;
+    private static final int CMSG_DATA = align(P + 8);
+
+    private static final int SOL_SOCKET = SocketLevel.SOL_SOCKET.intValue();
+    private static final int SCM_TIMESTAMPNS = SocketControlMessage.SCM_TIMESTAMPNS.intValue();
+    private static final int SCM_TIMESTAMP = SocketControlMessage.SCM_TIMESTAMP.intValue();
+
+    private static final ThreadLocal<MessageHeader> headers = new ThreadLocal<MessageHeader>() {
+        @Override
+        protected MessageHeader initialValue() {
+            return new MessageHeader();
+        }
+    };
+
+    private Pointer memory;
+    private int capacity = -1;
+
+    private MessageHeader() {
+    }
+
+    private static int align(int len) {
+        return (len + P - 1) & ~(P - 1);
+    }
+
+    /**
+     * Receives a message, its source address and its kernel timestamp.
+     *
+     * @param fd The socket file descriptor
+     * @param dst The destination buffer
+     * @param addr The source address to fill in, or null
+     * @param timestamp The timestamp to fill in
+     * @param flags The recvmsg flags
+     * @return The number of bytes received, or -1 on error
+     * @throws IOException if the call is not supported on this platform
+     */
+    static int recvmsg(int fd, ByteBuffer dst, SockAddrUnix addr, KernelTimestamp timestamp, int flags)
+            throws IOException {
+        if (Platform.getNativePlatform().getOS() != Platform.OS.LINUX) {
+            throw new UnsupportedOperationException("receive timestamps are only supported on Linux");
+        }
+        if (dst.isReadOnly()) {
+            throw new IllegalArgumentException("Read-only buffer");
+        }
+        return headers.get().receive(fd, dst, addr, timestamp, flags);
+    }
+
+    private int receive(int fd, ByteBuffer dst, SockAddrUnix addr, KernelTimestamp timestamp, int flags) {
+        int len = dst.remaining();
+        boolean direct = dst.isDirect();
+        ensureCapacity(direct ? 0 : Math.min(len, MAX_DATA));
+        Pointer data = direct || len <= capacity ? null : Memory.allocateDirect(runtime, len);
+
+        memory.putAddress(MSG_NAME, null == addr ? 0L : memory.address() + NAME);
+        memory.putInt(MSG_NAMELEN, null == addr ? 0 : NAME_SIZE);
+        memory.putAddress(MSG_IOV, memory.address() + IOV);
+        memory.putNativeLong(MSG_IOVLEN, 1);
+        memory.putAddress(MSG_CONTROL, memory.address() + CONTROL);
+        memory.putNativeLong(MSG_CONTROLLEN, CONTROL_SIZE);
+        memory.putInt(MSG_FLAGS, 0);
+        if (direct) {
+            memory.putAddress(IOV, Pointer.wrap(runtime, dst).address());
+        } else {
+            memory.putAddress(IOV, null == data ? memory.address() + DATA : data.address());
+        }
+        memory.putNativeLong(IOV + P, len);
+
+        int n;
+        do {
+            n = Native.libsocket().recvmsg(fd, memory, flags);
+        } while (n < 0 && Errno.EINTR.equals(Native.getLastError()));
+
+        timestamp.clear();
+        if (n < 0) {
+            return n;
+        }
+
+        if (null != data) {
+            data.get(0, dst.array(), dst.arrayOffset() + dst.position(), n);
+        } else if (!direct) {
+            memory.get(DATA, dst.array(), dst.arrayOffset() + dst.position(), n);
+        }
+        dst.position(dst.position() + n);
+
+        if (null != addr) {
+            int namelen = memory.getInt(MSG_NAMELEN);
+            memory.transferTo(NAME, Struct.getMemory(addr), 0, Math.min(namelen, NAME_SIZE));
+            addr.updatePath(namelen);
+        }
+
+        long controllen = memory.getNativeLong(MSG_CONTROLLEN);
+        int off = CONTROL;
+        while (off + CMSG_DATA <= CONTROL + controllen) {
+            long cmsgLen = memory.getNativeLong(off);
+            if (cmsgLen < CMSG_DATA) {
+                break;
+            }
+            if (memory.getInt(off + CMSG_LEVEL) == SOL_SOCKET) {
+                int type = memory.getInt(off + CMSG_TYPE);
+                if (type == SCM_TIMESTAMPNS) {
+                    timestamp.set(memory.getNativeLong(off + CMSG_DATA), memory.getNativeLong(off + CMSG_DATA + P));
+                } else if (type == SCM_TIMESTAMP) {
+                    timestamp.set(memory.getNativeLong(off + CMSG_DATA), memory.getNativeLong(off + CMSG_DATA + P) * 1000);
+                }
+            }
+            off += align((int) cmsgLen);
+        }
+
+        return n;
+    }
+
+    private void ensureCapacity(int len) {
+        if (len > capacity) {
+            int size = Math.max(len, 1024);
+            memory = Memory.allocateDirect(runtime, DATA + size);
+            capacity = size;
+        }
+    }
+}
@@ -20,27 +20,25 @@ package jnr.unixsocket;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 import jnr.constants.platform.Errno;
 import jnr.constants.platform.ProtocolFamily;
 import jnr.constants.platform.Sock;
 import jnr.constants.platform.SocketLevel;
+import jnr.constants.platform.SocketMessage;
 import jnr.constants.platform.SocketOption;
 import jnr.ffi.LastError;
 import jnr.ffi.LibraryLoader;
 import jnr.ffi.Platform;
 import jnr.ffi.Pointer;
 import jnr.ffi.Runtime;
-import jnr.ffi.Struct;
 import jnr.ffi.annotations.In;
 import jnr.ffi.annotations.Out;
 import jnr.ffi.annotations.Transient;
 import jnr.ffi.byref.IntByReference;
 import jnr.ffi.types.size_t;
 import jnr.ffi.types.ssize_t;
-import jnr.posix.DefaultNativeTimeval;
-import jnr.posix.Timeval;
+import jnr.unixsocket.SyscallInterceptor.Syscall;
 
 class Native {
     static final String[] libnames = Platform.getNativePlatform().getOS() == Platform.OS.SOLARIS
@@ -55,21 +53,41 @@ class Native {
         int socket(int domain, int type, int protocol);
         int listen(int fd, int backlog);
         int bind(int fd, @In @Out @Transient SockAddrUnix addr, int len);
-        int accept(int fd, @Out SockAddrUnix addr, @In @Out IntByReference len);
+        int accept(int fd, Pointer addr, Pointer len);
         int connect(int s, @In @Transient SockAddrUnix name, int namelen);
-        int getsockname(int fd, @Out SockAddrUnix addr, @In @Out IntByReference len);
-        int getpeername(int fd, @Out SockAddrUnix addr, @In @Out IntByReference len);
+        int getsockname(int fd, Pointer addr, Pointer len);
+        int getpeername(int fd, Pointer addr, Pointer len);
         int socketpair(int domain, int type, int protocol, @Out int[] sv);
         int fcntl(int fd, int cmd, int data);
         int getsockopt(int s, int level, int optname, @Out ByteBuffer optval, @In @Out IntByReference optlen);
-        int getsockopt(int s, int level, int optname, @Out Timeval optval, @In @Out IntByReference optlen);
+        int getsockopt(int s, int level, int optname, Pointer optval, Pointer optlen);
         int setsockopt(int s, int level, int optname, @In ByteBuffer optval, int optlen);
-        int setsockopt(int s, int level, int optname, @In Timeval optval, int optlen);
+        int setsockopt(int s, int level, int optname, @In Pointer optval, int optlen);
+        int pipe2(@Out int[] fds, int flags);
+        int close(int fd);
+        int shutdown(int fd, int how);
+        @ssize_t long splice(int fdIn, Pointer offIn, int fdOut, Pointer offOut, @size_t long len, int flags);
+        int sched_setaffinity(int pid, @size_t long cpusetsize, @In byte[] mask);
+        int sched_getaffinity(int pid, @size_t long cpusetsize, @Out byte[] mask);
+        int epoll_create1(int flags);
+        int epoll_ctl(int epfd, int op, int fd, Pointer event);
+        int epoll_wait(int epfd, Pointer events, int maxevents, int timeout);
+        int eventfd(int initval, int flags);
+        @ssize_t int read(int fd, Pointer buf, @size_t long count);
+        @ssize_t int write(int fd, Pointer buf, @size_t long count);
+        @ssize_t int read(int fd, @Out ByteBuffer buf, @size_t long count);
+        @ssize_t int write(int fd, @In ByteBuffer buf, @size_t long count);
         String strerror(int error);
+        @ssize_t int send(int s, @In ByteBuffer data, @size_t long size, int flags);
+        @ssize_t int recv(int s, @Out ByteBuffer data, @size_t long size, int flags);
         @ssize_t int sendto(int s, @In ByteBuffer data, @size_t long size, int flags, @In @Transient SockAddrUnix name, int namelen);
-        @ssize_t int recvfrom(int s, @Out ByteBuffer data, @size_t long size, int flags, @Out SockAddrUnix addr, @In @Out IntByReference len);
+        @ssize_t int recvmsg(int s, Pointer msghdr, int flags);
+        @ssize_t int recvfrom(int s, @Out ByteBuffer data, @size_t long size, int flags, Pointer addr, Pointer len);
     }
     
+    static final int MSG_DONTWAIT = SocketMessage.MSG_DONTWAIT.intValue();
+    static final int MSG_TRUNC = SocketMessage.MSG_TRUNC.intValue();
+
     static final LibC INSTANCE;
     
     static {
@@ -80,16 +98,29 @@ class Native {
         INSTANCE = loader.load();
     }
 
+    private static final NativeBackend BACKEND = new JnrBackend(INSTANCE);
+
     static final LibC libsocket() {
         return INSTANCE;
     }
 
+    /**
+     * Gets the backend the socket system calls of this package go through.
+     *
+     * @return The backend
+     */
+    static final NativeBackend backend() {
+        return BACKEND;
+    }
+
     static final LibC libc() {
         return INSTANCE;
     }
 
     static int socket(ProtocolFamily domain, Sock type, int protocol) throws IOException {
-        int fd = libsocket().socket(domain.intValue(), type.intValue(), protocol);
+        long t = Syscalls.begin(Syscall.SOCKET, -1, 0);
+        int fd = t == Syscalls.FAILED ? -1 : backend().socket(domain.intValue(), type.intValue(), protocol);
+        Syscalls.end(Syscall.SOCKET, -1, 0, fd, t);
         if (fd < 0) {
             throw new IOException(getLastErrorString());
         }
@@ -97,26 +128,88 @@ class Native {
     }
 
     static int socketpair(ProtocolFamily domain, Sock type, int protocol, int[] sv) throws IOException {
-        if (libsocket().socketpair(domain.intValue(), type.intValue(), protocol, sv) < 0) {
+        return socketpair(domain, type.intValue(), protocol, sv);
+    }
+
+    /**
+     * Creates a socketpair, with flags like SOCK_CLOEXEC or'ed into the type.
+     */
+    static int socketpair(ProtocolFamily domain, int type, int protocol, int[] sv) throws IOException {
+        long t = Syscalls.begin(Syscall.SOCKETPAIR, -1, 0);
+        int ret = t == Syscalls.FAILED ? -1 : backend().socketpair(domain.intValue(), type, protocol, sv);
+        Syscalls.end(Syscall.SOCKETPAIR, -1, 0, ret, t);
+        if (ret < 0) {
             throw new IOException("socketpair(2) failed " + Native.getLastErrorString());
         }
         return 0;
     }
 
     static int listen(int fd, int backlog) {
-        return libsocket().listen(fd, backlog);
+        long t = Syscalls.begin(Syscall.LISTEN, fd, 0);
+        int ret = t == Syscalls.FAILED ? -1 : backend().listen(fd, backlog);
+        Syscalls.end(Syscall.LISTEN, fd, 0, ret, t);
+        return ret;
     }
 
     static int bind(int fd, SockAddrUnix addr, int len) {
-        return libsocket().bind(fd, addr, len);
+        long t = Syscalls.begin(Syscall.BIND, fd, 0);
+        int ret = t == Syscalls.FAILED ? -1 : backend().bind(fd, addr, len);
+        Syscalls.end(Syscall.BIND, fd, 0, ret, t);
+        return ret;
     }
 
-    static int accept(int fd, SockAddrUnix addr, IntByReference len) {
-        return libsocket().accept(fd, addr, len);
+    static int accept(int fd, SockAddrUnix addr) {
+        NativeStructs structs = NativeStructs.current();
+        long t = Syscalls.begin(Syscall.ACCEPT, fd, 0);
+        int clientfd = t == Syscalls.FAILED ? -1 : backend().accept(fd, structs.sockaddr(), structs.sockaddrLength());
+        // Interceptors run in end() and may reuse the per-thread structs
+        if (clientfd >= 0) {
+            structs.copySockaddr(addr);
+        }
+        Syscalls.end(Syscall.ACCEPT, fd, 0, clientfd, t);
+        return clientfd;
     }
 
     static int connect(int fd, SockAddrUnix addr, int len) {
-        return libsocket().connect(fd, addr, len);
+        long t = Syscalls.begin(Syscall.CONNECT, fd, 0);
+        int ret = t == Syscalls.FAILED ? -1 : backend().connect(fd, addr, len);
+        Syscalls.end(Syscall.CONNECT, fd, 0, ret, t);
+        return ret;
+    }
+
+    static int getsockname(int fd, SockAddrUnix addr) {
+        NativeStructs structs = NativeStructs.current();
+        long t = Syscalls.begin(Syscall.GETSOCKNAME, fd, 0);
+        int ret = t == Syscalls.FAILED ? -1 : backend().getsockname(fd, structs.sockaddr(), structs.sockaddrLength());
+        if (ret == 0) {
+            structs.copySockaddr(addr);
+        }
+        Syscalls.end(Syscall.GETSOCKNAME, fd, 0, ret, t);
+        return ret;
+    }
+
+    static int getpeername(int fd, SockAddrUnix addr) {
+        NativeStructs structs = NativeStructs.current();
+        long t = Syscalls.begin(Syscall.GETPEERNAME, fd, 0);
+        int ret = t == Syscalls.FAILED ? -1 : backend().getpeername(fd, structs.sockaddr(), structs.sockaddrLength());
+        if (ret == 0) {
+            structs.copySockaddr(addr);
+        }
+        Syscalls.end(Syscall.GETPEERNAME, fd, 0, ret, t);
+        return ret;
+    }
+
+    /**
+     * Dissolves the association of a connected datagram socket by
+     * connecting it to an AF_UNSPEC address.
+     *
+     * @param fd The socket file descriptor
+     * @return 0 on success, -1 on error
+     */
+    static int disconnect(int fd) {
+        SockAddrUnix addr = SockAddrUnix.create();
+        addr.setFamily(ProtocolFamily.PF_UNSPEC);
+        return connect(fd, addr, addr.getHeaderLength());
     }
 
     static String getLastErrorString() {
@@ -146,40 +239,59 @@ class Native {
     }
 
     public static int setsockopt(int s, SocketLevel level, SocketOption optname, int optval) {
-        if (optname == SocketOption.SO_RCVTIMEO || optname == SocketOption.SO_SNDTIMEO) {
-            DefaultNativeTimeval t = new DefaultNativeTimeval(Runtime.getSystemRuntime());
-            t.setTime(new long [] {optval / 1000, ((long)optval % 1000) * 1000});
-            return libsocket().setsockopt(s, level.intValue(), optname.intValue(), t, DefaultNativeTimeval.size(t));
+        NativeStructs structs = NativeStructs.current();
+        long t = Syscalls.begin(Syscall.SETSOCKOPT, s, 0);
+        int ret;
+        if (t == Syscalls.FAILED) {
+            ret = -1;
+        } else if (optname == SocketOption.SO_RCVTIMEO || optname == SocketOption.SO_SNDTIMEO) {
+            ret = backend().setsockopt(s, level.intValue(), optname.intValue(),
+                    structs.putTimeval(optval), NativeStructs.TIMEVAL_SIZE);
         } else {
-            ByteBuffer buf = ByteBuffer.allocate(4);
-            buf.order(ByteOrder.nativeOrder());
-            buf.putInt(optval).flip();
-            return libsocket().setsockopt(s, level.intValue(), optname.intValue(), buf, buf.remaining());
+            ret = backend().setsockopt(s, level.intValue(), optname.intValue(), structs.putInt(optval), 4);
         }
+        Syscalls.end(Syscall.SETSOCKOPT, s, 0, ret, t);
+        return ret;
     }
 
     public static int getsockopt (int s, SocketLevel level, int optname) {
-        IntByReference ref;
+        NativeStructs structs = NativeStructs.current();
+        long t = Syscalls.begin(Syscall.GETSOCKOPT, s, 0);
         if (optname == SocketOption.SO_RCVTIMEO.intValue() || optname == SocketOption.SO_SNDTIMEO.intValue()) {
-            DefaultNativeTimeval t = new DefaultNativeTimeval(Runtime.getSystemRuntime());
-            ref = new IntByReference(DefaultNativeTimeval.size(t));
-            Native.libsocket().getsockopt(s, level.intValue(), optname, t, ref);
-            return (t.tv_sec.intValue() * 1000 + t.tv_usec.intValue() / 1000);
+            structs.putTimeval(0);
+            int ret = t == Syscalls.FAILED ? -1 : backend().getsockopt(s, level.intValue(), optname,
+                    structs.value(), structs.length(NativeStructs.TIMEVAL_SIZE));
+            int value = structs.getTimevalMillis();
+            Syscalls.end(Syscall.GETSOCKOPT, s, 0, ret, t);
+            return value;
         } else {
-            ByteBuffer buf = ByteBuffer.allocate(4);
-            buf.order(ByteOrder.nativeOrder());
-            ref = new IntByReference(4);
-            Native.libsocket().getsockopt(s, level.intValue(), optname, buf, ref);
-            return buf.getInt();
+            structs.putInt(0);
+            int ret = t == Syscalls.FAILED ? -1 : backend().getsockopt(s, level.intValue(), optname,
+                    structs.value(), structs.length(4));
+            int value = structs.getInt();
+            Syscalls.end(Syscall.GETSOCKOPT, s, 0, ret, t);
+            return value;
         }
     }
 
-    public static int getsockopt(int s, SocketLevel level, SocketOption optname, Struct data) {
-        Pointer struct_ptr = Struct.getMemory(data);
-        IntByReference ref = new IntByReference(Struct.size(data));
-        ByteBuffer buf = ByteBuffer.wrap((byte[])struct_ptr.array());
-
-        return Native.libsocket().getsockopt(s, level.intValue(), optname.intValue(), buf, ref);
+    /**
+     * Retrieves a struct ucred option.
+     *
+     * @param ucred Receives the pid, uid and gid, in that order
+     * @return 0 on success, -1 on error
+     */
+    static int getucred(int s, SocketLevel level, SocketOption optname, int[] ucred) {
+        NativeStructs structs = NativeStructs.current();
+        long t = Syscalls.begin(Syscall.GETSOCKOPT, s, 0);
+        int ret = t == Syscalls.FAILED ? -1 : backend().getsockopt(s, level.intValue(), optname.intValue(),
+                structs.value(), structs.length(NativeStructs.UCRED_SIZE));
+        if (ret == 0) {
+            ucred[0] = structs.getUcredPid();
+            ucred[1] = structs.getUcredUid();
+            ucred[2] = structs.getUcredGid();
+        }
+        Syscalls.end(Syscall.GETSOCKOPT, s, 0, ret, t);
+        return ret;
     }
 
     public static boolean getboolsockopt (int s, SocketLevel level, int optname) {
@@ -191,9 +303,12 @@ class Native {
             throw new IllegalArgumentException("Source buffer cannot be null");
         }
 
+        int size = src.remaining();
         int n;
         do {
-            n = libsocket().sendto(fd, src, src.remaining(), 0, addr, len);
+            long t = Syscalls.begin(Syscall.SENDTO, fd, size);
+            n = t == Syscalls.FAILED ? -1 : backend().sendto(fd, src, size, 0, addr, len);
+            Syscalls.end(Syscall.SENDTO, fd, size, n, t);
         } while (n < 0 && Errno.EINTR.equals(getLastError()));
 
         if (n > 0) {
@@ -203,7 +318,31 @@ class Native {
         return n;
     }
 
-    public static int recvfrom(int fd, ByteBuffer dst, SockAddrUnix addr) throws IOException {
+    public static int send(int fd, ByteBuffer src) throws IOException {
+        return send(fd, src, 0);
+    }
+
+    public static int send(int fd, ByteBuffer src, int flags) throws IOException {
+        if (src == null) {
+            throw new IllegalArgumentException("Source buffer cannot be null");
+        }
+
+        int size = src.remaining();
+        int n;
+        do {
+            long t = Syscalls.begin(Syscall.SEND, fd, size);
+            n = t == Syscalls.FAILED ? -1 : backend().send(fd, src, size, flags);
+            Syscalls.end(Syscall.SEND, fd, size, n, t);
+        } while (n < 0 && Errno.EINTR.equals(getLastError()));
+
+        if (n > 0) {
+            src.position(src.position() + n);
+        }
+
+        return n;
+    }
+
+    public static int recv(int fd, ByteBuffer dst, int flags) throws IOException {
         if (dst == null) {
             throw new IllegalArgumentException("Destination buffer cannot be null");
         }
@@ -211,10 +350,12 @@ class Native {
             throw new IllegalArgumentException("Read-only buffer");
         }
 
-        IntByReference addrlen = (null == addr) ? null : new IntByReference(addr.getMaximumLength());
+        int size = dst.remaining();
         int n;
         do {
-            n = libsocket().recvfrom(fd, dst, dst.remaining(), 0, addr, addrlen);
+            long t = Syscalls.begin(Syscall.RECV, fd, size);
+            n = t == Syscalls.FAILED ? -1 : backend().recv(fd, dst, size, flags);
+            Syscalls.end(Syscall.RECV, fd, size, n, t);
         } while (n < 0 && Errno.EINTR.equals(getLastError()));
 
         if (n > 0) {
@@ -223,4 +364,38 @@ class Native {
 
         return n;
     }
+
+    public static int recvfrom(int fd, ByteBuffer dst, SockAddrUnix addr) throws IOException {
+        return recvfrom(fd, dst, addr, 0);
+    }
+
+    public static int recvfrom(int fd, ByteBuffer dst, SockAddrUnix addr, int flags) throws IOException {
+        if (dst == null) {
+            throw new IllegalArgumentException("Destination buffer cannot be null");
+        }
+        if (dst.isReadOnly()) {
+            throw new IllegalArgumentException("Read-only buffer");
+        }
+
+        NativeStructs structs = null == addr ? null : NativeStructs.current();
+        Pointer from = null == structs ? null : structs.sockaddr();
+        int size = dst.remaining();
+        int n;
+        do {
+            long t = Syscalls.begin(Syscall.RECVFROM, fd, size);
+            Pointer fromlen = null == structs ? null : structs.sockaddrLength();
+            n = t == Syscalls.FAILED ? -1 : backend().recvfrom(fd, dst, size, flags, from, fromlen);
+            if (n >= 0 && null != addr) {
+                structs.copySockaddr(addr);
+            }
+            Syscalls.end(Syscall.RECVFROM, fd, size, n, t);
+        } while (n < 0 && Errno.EINTR.equals(getLastError()));
+
+        if (n > 0) {
+            // with MSG_TRUNC, n is the full length of a truncated datagram
+            dst.position(dst.position() + Math.min(n, dst.remaining()));
+        }
+
+        return n;
+    }
 }
@@ -0,0 +1,49 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.nio.ByteBuffer;
+
+import jnr.ffi.Pointer;
+
+/**
+ * The socket system calls used by this package.
+ * <p>
+ * All methods follow the C calling convention: they return -1 and leave errno
+ * in jnr-ffi's last error on failure, and never move buffer positions.
+ * Value-result arguments are passed as the direct memory of the calling
+ * thread's {@link NativeStructs}, so every backend can hand them to the kernel
+ * as is. {@link JnrBackend} calls libc through jnr-ffi.
+ */
+interface NativeBackend {
+    int socket(int domain, int type, int protocol);
+    int socketpair(int domain, int type, int protocol, int[] sv);
+    int bind(int fd, SockAddrUnix addr, int len);
+    int connect(int fd, SockAddrUnix addr, int len);
+    int listen(int fd, int backlog);
+    int accept(int fd, Pointer addr, Pointer len);
+    int getsockname(int fd, Pointer addr, Pointer len);
+    int getpeername(int fd, Pointer addr, Pointer len);
+    int setsockopt(int fd, int level, int optname, Pointer optval, int optlen);
+    int getsockopt(int fd, int level, int optname, Pointer optval, Pointer optlen);
+    int read(int fd, ByteBuffer dst, int size);
+    int write(int fd, ByteBuffer src, int size);
+    int send(int fd, ByteBuffer src, int size, int flags);
+    int recv(int fd, ByteBuffer dst, int size, int flags);
+    int sendto(int fd, ByteBuffer src, int size, int flags, SockAddrUnix addr, int len);
+    int recvfrom(int fd, ByteBuffer dst, int size, int flags, Pointer addr, Pointer len);
+}
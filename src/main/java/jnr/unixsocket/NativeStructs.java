@@ -0,0 +1,146 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+import jnr.ffi.Struct;
+import jnr.ffi.TypeAlias;
+
+/**
+ * Per-thread native memory for the small structures passed to the socket
+ * calls: a socklen_t, an option value (int, struct timeval or struct ucred)
+ * and a sockaddr_un. The kernel reads and writes them in place, so no
+ * jnr-ffi struct has to be allocated and copied for each call.
+ */
+final class NativeStructs {
+    private static final Runtime runtime = Runtime.getSystemRuntime();
+
+    private static final int LEN = 0;
+    private static final int VALUE = 8;
+    private static final int VALUE_SIZE = 32;
+    private static final int ADDR = VALUE + VALUE_SIZE;
+    private static final int ADDR_SIZE = SockAddrUnix.HEADER_LENGTH + SockAddrUnix.ADDR_LENGTH;
+
+    // struct timeval { time_t tv_sec; suseconds_t tv_usec; }
+    private static final int TV_USEC = runtime.longSize();
+    static final int TIMEVAL_SIZE = 2 * runtime.longSize();
+
+    // struct ucred { pid_t pid; uid_t uid; gid_t gid; }
+    private static final int UCRED_UID = runtime.findType(TypeAlias.pid_t).size();
+    private static final int UCRED_GID = UCRED_UID + runtime.findType(TypeAlias.uid_t).size();
+    static final int UCRED_SIZE = UCRED_GID + runtime.findType(TypeAlias.gid_t).size();
+
+    private static final ThreadLocal<NativeStructs> structs = new ThreadLocal<NativeStructs>() {
+        @Override
+        protected NativeStructs initialValue() {
+            return new NativeStructs();
+        }
+    };
+
+    private final Pointer memory;
+    private final Pointer len;
+    private final Pointer value;
+    private final Pointer addr;
+
+    private NativeStructs() {
+        memory = Memory.allocateDirect(runtime, ADDR + ADDR_SIZE);
+        len = memory.slice(LEN, 4);
+        value = memory.slice(VALUE, VALUE_SIZE);
+        addr = memory.slice(ADDR, ADDR_SIZE);
+    }
+
+    static NativeStructs current() {
+        return structs.get();
+    }
+
+    /**
+     * Sets the socklen_t value-result argument.
+     *
+     * @param length The size of the buffer it describes
+     * @return The socklen_t to pass to the call
+     */
+    Pointer length(int length) {
+        len.putInt(0, length);
+        return len;
+    }
+
+    int length() {
+        return len.getInt(0);
+    }
+
+    /**
+     * Retrieves the sockaddr_un buffer, sized for the largest address.
+     *
+     * @return The sockaddr_un to pass to the call
+     */
+    Pointer sockaddr() {
+        return addr;
+    }
+
+    Pointer sockaddrLength() {
+        return length(ADDR_SIZE);
+    }
+
+    /**
+     * Copies the address filled in by the kernel into an address struct.
+     *
+     * @param dst The address to fill in
+     */
+    void copySockaddr(SockAddrUnix dst) {
+        int n = length();
+        // transfer from the block itself, transferTo() on a slice ignores the slice offset
+        memory.transferTo(ADDR, Struct.getMemory(dst), 0, Math.max(0, Math.min(n, ADDR_SIZE)));
+        dst.updatePath(n);
+    }
+
+    Pointer value() {
+        return value;
+    }
+
+    Pointer putInt(int v) {
+        value.putInt(0, v);
+        return value;
+    }
+
+    int getInt() {
+        return value.getInt(0);
+    }
+
+    Pointer putTimeval(int millis) {
+        value.putNativeLong(0, millis / 1000);
+        value.putNativeLong(TV_USEC, ((long) millis % 1000) * 1000);
+        return value;
+    }
+
+    int getTimevalMillis() {
+        return (int) (value.getNativeLong(0) * 1000 + value.getNativeLong(TV_USEC) / 1000);
+    }
+
+    int getUcredPid() {
+        return value.getInt(0);
+    }
+
+    int getUcredUid() {
+        return value.getInt(UCRED_UID);
+    }
+
+    int getUcredGid() {
+        return value.getInt(UCRED_GID);
+    }
+}
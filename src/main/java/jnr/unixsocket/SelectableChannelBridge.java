@@ -0,0 +1,110 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.spi.AbstractSelectableChannel;
+
+import jnr.enxio.channels.NativeSelectableChannel;
+import jnr.enxio.channels.NativeSelectorProvider;
+import jnr.posix.JavaLibCHelper;
+
+/**
+ * Makes a channel of the JDK's default {@link java.nio.channels.spi.SelectorProvider}
+ * registrable with a selector of {@link NativeSelectorProvider}, so that
+ * TCP and UNIX channels can be multiplexed by one selector in a single
+ * {@code select()} call.
+ * <p>
+ * The JDK selector implementation only accepts its own channel classes, so
+ * the bridge works the other way round: it exposes the file descriptor of
+ * the JDK channel to the native selector. The JDK channel is switched to
+ * non-blocking mode and must not be registered with another selector while
+ * bridged. I/O is still performed on the JDK channel, see {@link #channel()}.
+ * Closing the bridge closes the JDK channel.
+ * <p>
+ * On Java 9 and later, the file descriptor can only be obtained if
+ * {@code java.base/sun.nio.ch} and {@code java.base/java.io} are opened to
+ * jnr-posix, e.g. with {@code --add-opens}.
+ */
+public final class SelectableChannelBridge extends AbstractSelectableChannel
+        implements NativeSelectableChannel {
+
+    private final SelectableChannel channel;
+    private final int fd;
+
+    private SelectableChannelBridge(SelectableChannel channel, int fd) {
+        super(NativeSelectorProvider.getInstance());
+        this.channel = channel;
+        this.fd = fd;
+    }
+
+    /**
+     * Creates a bridge for a JDK channel. The returned bridge is in
+     * non-blocking mode.
+     *
+     * @param channel The channel to bridge
+     * @return The bridge, registrable with a native selector
+     * @throws UnsupportedOperationException if the file descriptor of the
+     *         channel is not accessible
+     * @throws IOException if the channel could not be switched to non-blocking mode
+     */
+    public static SelectableChannelBridge open(SelectableChannel channel) throws IOException {
+        if (channel instanceof NativeSelectableChannel) {
+            throw new IllegalArgumentException("channel is already a native channel");
+        }
+        FileDescriptor descriptor = JavaLibCHelper.getDescriptorFromChannel(channel);
+        int fd = null == descriptor ? -1 : JavaLibCHelper.getfdFromDescriptor(descriptor);
+        if (fd < 0) {
+            throw new UnsupportedOperationException("file descriptor of "
+                    + channel.getClass().getName() + " is not accessible");
+        }
+        SelectableChannelBridge bridge = new SelectableChannelBridge(channel, fd);
+        bridge.configureBlocking(false);
+        return bridge;
+    }
+
+    /**
+     * Retrieves the bridged JDK channel.
+     *
+     * @return The channel
+     */
+    public SelectableChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public int getFD() {
+        return fd;
+    }
+
+    @Override
+    public int validOps() {
+        return channel.validOps();
+    }
+
+    @Override
+    protected void implCloseSelectableChannel() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    protected void implConfigureBlocking(boolean block) throws IOException {
+        channel.configureBlocking(block);
+    }
+}
@@ -42,6 +42,10 @@ abstract class SockAddrUnix extends Struct {
     // (which starts with a NUL byte. path is NOT NUL terminated in this case!)
     private java.lang.String cachedPath;
 
+    // Number of significant bytes in sun_path, or -1 if unknown. Addresses
+    // filled in by the kernel only record this and decode cachedPath lazily.
+    private int pathLength = -1;
+
     SockAddrUnix() {
         super(Runtime.getSystemRuntime());
     }
@@ -73,6 +77,7 @@ abstract class SockAddrUnix extends Struct {
     void setPath(java.lang.String path) {
         cachedPath = path;
         getPathField().set(cachedPath);
+        pathLength = Math.min(path.getBytes(UTF_8).length, getPathField().length());
     }
 
     /**
@@ -80,27 +85,30 @@ abstract class SockAddrUnix extends Struct {
      * In order to support abstract namespaces, this MUST be
      * called after any native syscall that sets this
      * path struct like getsockname(), getpeername(), accept().
+     * <p>
+     * Only the length of the path is recorded here, the path
+     * itself is decoded on the first call to {@link #getPath()}.
      *
      * @param len the value of the addrlen var, set by the above syscalls.
      */
     void updatePath(final int len) {
-        if (currentOS == OS.LINUX) {
+        int slen = len - HEADER_LENGTH;
+        if (slen <= 0) {
+            cachedPath = "";
+            pathLength = 0;
+        } else if (currentOS == OS.LINUX) {
             // Linux always returns an accurate length in
             // order to support abstract namespace, where
-            // path STARTS with a NUL byte.
-            cachedPath = len == HEADER_LENGTH ? "" : getPath(len - HEADER_LENGTH);
+            // path STARTS with a NUL byte. Regular paths
+            // include the trailing NUL in the length.
+            UTF8String str = getPathField();
+            cachedPath = null;
+            pathLength = 0 != str.getMemory().getByte(str.offset()) ? slen - 1 : slen;
         } else {
             // All others might return a len > 0 (typically 14) AND the path is terminated
             // by a NUL byte if it is shorter than sizeof(sun_path)
-            cachedPath = getPathField().get();
-            int slen = len - HEADER_LENGTH;
-            if (slen <= 0) {
-                cachedPath = "";
-            } else {
-                if (slen < getPathField().length() && slen < cachedPath.length()) {
-                    cachedPath = cachedPath.substring(0, slen);
-                }
-            }
+            cachedPath = null;
+            pathLength = Math.min(slen, strlen(getPathField()));
         }
     }
 
@@ -111,27 +119,70 @@ abstract class SockAddrUnix extends Struct {
      */
     final java.lang.String getPath() {
         if (null == cachedPath) {
-            cachedPath = getPathField().get();
+            cachedPath = pathLength < 0 ? getPathField().get() : decodePath(pathLength);
         }
         return cachedPath;
     }
 
     /**
-     * Gets the path of this socket address, supporting abstract namespace on Linux.
+     * Decodes the first <tt>len</tt> bytes of the path, supporting abstract namespace on Linux.
      *
-     * @param len The desired length of the string.
-     * If the first character of the path is NUL, then this value ist considered
-     * exact, otherwise it includes a trailing NUL charater and therefore the actual
-     * string length is len - 1.
+     * @param len The exact number of bytes to decode.
      */
-    final java.lang.String getPath(int len) {
+    private java.lang.String decodePath(int len) {
         UTF8String str = getPathField();
-        byte [] ba = new byte[str.length()];
+        byte [] ba = new byte[len];
         str.getMemory().get(str.offset(), ba, 0, len);
-        if (0 != ba[0]) {
-            len -= 1;
+        return new java.lang.String(ba, UTF_8);
+    }
+
+    /**
+     * Gets the number of significant bytes in the path of this socket address.
+     *
+     * @return The path length, in bytes
+     */
+    private int pathLength() {
+        return pathLength < 0 ? strlen(getPathField()) : pathLength;
+    }
+
+    /**
+     * Compares the raw path bytes of this address with those of another address,
+     * without decoding either of them.
+     *
+     * @param other The address to compare with
+     * @return true if both paths consist of the same bytes
+     */
+    final boolean pathEquals(SockAddrUnix other) {
+        int len = pathLength();
+        if (len != other.pathLength()) {
+            return false;
+        }
+        UTF8String a = getPathField();
+        UTF8String b = other.getPathField();
+        jnr.ffi.Pointer ma = a.getMemory();
+        jnr.ffi.Pointer mb = b.getMemory();
+        for (int i = 0; i < len; i++) {
+            if (ma.getByte(a.offset() + i) != mb.getByte(b.offset() + i)) {
+                return false;
+            }
         }
-        return new java.lang.String(java.util.Arrays.copyOf(ba, len), UTF_8);
+        return true;
+    }
+
+    /**
+     * Computes a hash code over the raw path bytes, consistent with {@link #pathEquals}.
+     *
+     * @return The hash code
+     */
+    final int pathHashCode() {
+        UTF8String str = getPathField();
+        jnr.ffi.Pointer m = str.getMemory();
+        int len = pathLength();
+        int h = 1;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + m.getByte(str.offset() + i);
+        }
+        return h;
     }
 
     /**
@@ -149,10 +200,7 @@ abstract class SockAddrUnix extends Struct {
      * @return The actual size of this address, in bytes
      */
     int length() {
-        if (currentOS == OS.LINUX && null != cachedPath) {
-            return HEADER_LENGTH + cachedPath.length();
-        }
-        return HEADER_LENGTH + strlen(getPathField());
+        return HEADER_LENGTH + pathLength();
     }
 
     /**
@@ -0,0 +1,197 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jnr.unixsocket;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import jnr.enxio.channels.NativeSelectableChannel;
+
+/**
+ * JDK Flight Recorder events for socket operations, the counterparts of the
+ * JDK's {@code jdk.SocketRead} and {@code jdk.SocketWrite} events.
+ * <p>
+ * The events are named {@code jnr.unixsocket.SocketRead},
+ * {@code jnr.unixsocket.SocketWrite}, {@code jnr.unixsocket.DatagramSend},
+ * {@code jnr.unixsocket.DatagramReceive}, {@code jnr.unixsocket.Accept} and
+ * {@code jnr.unixsocket.Connect}, and carry the socket path, the file
+ * descriptor and the number of bytes. Like the JDK's socket events they have
+ * a default threshold of 20 ms, which can be changed in the recording
+ * settings, e.g. {@code jnr.unixsocket.SocketRead#threshold=5 ms}.
+ * <p>
+ * This library is built for Java 8, so the events are defined at runtime
+ * through {@code jdk.jfr.EventFactory}, available since JDK 12; on older
+ * JVMs, or with {@code -Djnr.unixsocket.jfr=false}, no events are emitted.
+ * While an event is not enabled in a recording, an operation costs one
+ * check of its state.
+ */
+final class SocketEvents {
+    static final SocketEvents READ = create("SocketRead", "UNIX Socket Read", "Reading data from a UNIX domain socket");
+    static final SocketEvents WRITE = create("SocketWrite", "UNIX Socket Write", "Writing data to a UNIX domain socket");
+    static final SocketEvents SEND = create("DatagramSend", "UNIX Datagram Send", "Sending a datagram via a UNIX domain socket");
+    static final SocketEvents RECEIVE = create("DatagramReceive", "UNIX Datagram Receive", "Receiving a datagram via a UNIX domain socket");
+    static final SocketEvents ACCEPT = create("Accept", "UNIX Socket Accept", "Accepting a connection on a UNIX domain socket");
+    static final SocketEvents CONNECT = create("Connect", "UNIX Socket Connect", "Connecting a UNIX domain socket");
+
+    private static final String THRESHOLD = "20 ms";
+
+    private final MethodHandle isEnabled;
+    private final MethodHandle newEvent;
+    private final MethodHandle begin;
+    private final MethodHandle end;
+    private final MethodHandle shouldCommit;
+    private final MethodHandle set;
+    private final MethodHandle commit;
+
+    private SocketEvents(MethodHandle isEnabled, MethodHandle newEvent, MethodHandle begin, MethodHandle end,
+                         MethodHandle shouldCommit, MethodHandle set, MethodHandle commit) {
+        this.isEnabled = isEnabled;
+        this.newEvent = newEvent;
+        this.begin = begin;
+        this.end = end;
+        this.shouldCommit = shouldCommit;
+        this.set = set;
+        this.commit = commit;
+    }
+
+    private static SocketEvents create(String name, String label, String description) {
+        if (!Boolean.parseBoolean(System.getProperty("jnr.unixsocket.jfr", "true"))) {
+            return null;
+        }
+        try {
+            ClassLoader loader = ClassLoader.getSystemClassLoader();
+            Class<?> elementClass = Class.forName("jdk.jfr.AnnotationElement", true, loader);
+            Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor", true, loader);
+            Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory", true, loader);
+            Class<?> eventClass = Class.forName("jdk.jfr.Event", true, loader);
+            Class<?> typeClass = Class.forName("jdk.jfr.EventType", true, loader);
+            Constructor<?> element = elementClass.getConstructor(Class.class, Object.class);
+            Constructor<?> descriptor = descriptorClass.getConstructor(Class.class, String.class, List.class);
+
+            List<Object> annotations = Arrays.asList(
+                    element.newInstance(annotation("jdk.jfr.Name", loader), "jnr.unixsocket." + name),
+                    element.newInstance(annotation("jdk.jfr.Label", loader), label),
+                    element.newInstance(annotation("jdk.jfr.Description", loader), description),
+                    element.newInstance(annotation("jdk.jfr.Category", loader), new String[] { "Java Application", "UNIX Socket" }),
+                    element.newInstance(annotation("jdk.jfr.Threshold", loader), THRESHOLD));
+            List<Object> fields = Arrays.asList(
+                    descriptor.newInstance(String.class, "path", labelled(element, loader, "Path")),
+                    descriptor.newInstance(int.class, "fd", labelled(element, loader, "File Descriptor")),
+                    descriptor.newInstance(long.class, "bytes", labelled(element, loader, "Bytes")));
+            Object factory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+            Object type = factoryClass.getMethod("getEventType").invoke(factory);
+
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            return new SocketEvents(
+                    lookup.findVirtual(typeClass, "isEnabled", MethodType.methodType(boolean.class)).bindTo(type),
+                    lookup.findVirtual(factoryClass, "newEvent", MethodType.methodType(eventClass)).bindTo(factory),
+                    lookup.findVirtual(eventClass, "begin", MethodType.methodType(void.class)),
+                    lookup.findVirtual(eventClass, "end", MethodType.methodType(void.class)),
+                    lookup.findVirtual(eventClass, "shouldCommit", MethodType.methodType(boolean.class)),
+                    lookup.findVirtual(eventClass, "set", MethodType.methodType(void.class, int.class, Object.class)),
+                    lookup.findVirtual(eventClass, "commit", MethodType.methodType(void.class)));
+        } catch (Throwable t) {
+            // no JFR, or no EventFactory before JDK 12
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Annotation> annotation(String name, ClassLoader loader) throws ClassNotFoundException {
+        return (Class<? extends Annotation>) Class.forName(name, true, loader);
+    }
+
+    private static List<Object> labelled(Constructor<?> element, ClassLoader loader, String label) throws Exception {
+        List<Object> annotations = new ArrayList<Object>(1);
+        annotations.add(element.newInstance(annotation("jdk.jfr.Label", loader), label));
+        return Collections.unmodifiableList(annotations);
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @param events The event type, or null if events are not available
+     * @return The event, or null if the event type is not enabled
+     */
+    static Object begin(SocketEvents events) {
+        if (null == events) {
+            return null;
+        }
+        try {
+            if (!(boolean) events.isEnabled.invoke()) {
+                return null;
+            }
+            Object event = events.newEvent.invoke();
+            events.begin.invoke(event);
+            return event;
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * Ends timing an operation, and commits the event if it took at least
+     * the threshold.
+     *
+     * @param events The event type
+     * @param event The event returned by {@link #begin}, or null
+     * @param channel The channel, whose socket path is recorded unless
+     *        an address is given
+     * @param address The peer address of a datagram, or null
+     * @param bytes The number of bytes transferred
+     */
+    static void commit(SocketEvents events, Object event, NativeSelectableChannel channel,
+                       UnixSocketAddress address, long bytes) {
+        if (null == event) {
+            return;
+        }
+        try {
+            events.end.invoke(event);
+            if ((boolean) events.shouldCommit.invoke(event)) {
+                events.set.invoke(event, 0, null != address ? address.path() : path(channel));
+                // getFD() would detach a loopback pair
+                int fd = channel instanceof UnixSocketChannel
+                        ? ((UnixSocketChannel) channel).nativeFD() : channel.getFD();
+                events.set.invoke(event, 1, fd);
+                events.set.invoke(event, 2, bytes);
+                events.commit.invoke(event);
+            }
+        } catch (Throwable t) {
+            // not worth failing the I/O operation for
+        }
+    }
+
+    private static String path(NativeSelectableChannel channel) {
+        UnixSocketAddress address = null;
+        if (channel instanceof UnixSocketChannel) {
+            address = ((UnixSocketChannel) channel).getRemoteSocketAddress();
+        } else if (channel instanceof UnixDatagramChannel) {
+            address = ((UnixDatagramChannel) channel).getRemoteSocketAddress();
+        } else if (channel instanceof UnixServerSocketChannel) {
+            address = ((UnixServerSocketChannel) channel).getLocalSocketAddress();
+        }
+        return null != address ? address.path() : null;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.util.Arrays;
+
+import jnr.ffi.Memory;
+import jnr.ffi.Pointer;
+import jnr.ffi.Runtime;
+
+/**
+ * A classic BPF program, to be attached to a socket with SO_ATTACH_FILTER.
+ * <p>
+ * The kernel runs the program on every incoming message before it is queued
+ * on the socket. Messages for which the program returns 0 are dropped without
+ * ever reaching the application. Offsets used by the program are relative to
+ * the start of the message payload.
+ * <p>
+ * Socket filters are only available on Linux, where AF_UNIX sockets run them
+ * on datagrams only, so they can be attached to a {@link UnixDatagramChannel}
+ * but not to a stream channel.
+ * <p>
+ * <b>See also:</b> <a href="https://www.kernel.org/doc/Documentation/networking/filter.txt">filter.txt</a>
+ */
+public final class SocketFilter {
+    // Instruction classes
+    static final int BPF_LD = 0x00;
+    static final int BPF_ALU = 0x04;
+    static final int BPF_JMP = 0x05;
+    static final int BPF_RET = 0x06;
+    // Operand sizes
+    static final int BPF_W = 0x00;
+    static final int BPF_H = 0x08;
+    static final int BPF_B = 0x10;
+    // Addressing modes
+    static final int BPF_ABS = 0x20;
+    static final int BPF_LEN = 0x80;
+    // ALU and jump operations
+    static final int BPF_AND = 0x50;
+    static final int BPF_JA = 0x00;
+    static final int BPF_JEQ = 0x10;
+    static final int BPF_JGT = 0x20;
+    static final int BPF_JGE = 0x30;
+    static final int BPF_JSET = 0x40;
+    static final int BPF_K = 0x00;
+
+    /** Maximum number of instructions accepted by the kernel. */
+    public static final int MAX_INSTRUCTIONS = 4096;
+
+    private static final int INSTRUCTION_SIZE = 8;
+
+    private final int[] code;
+    private final int[] jt;
+    private final int[] jf;
+    private final int[] k;
+
+    private SocketFilter(int[] code, int[] jt, int[] jf, int[] k) {
+        this.code = code;
+        this.jt = jt;
+        this.jf = jf;
+        this.k = k;
+    }
+
+    /**
+     * Creates a new builder for a socket filter program.
+     *
+     * @return A new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a filter that accepts only messages starting with the given bytes.
+     *
+     * @param prefix The expected leading bytes
+     * @return The filter
+     */
+    public static SocketFilter acceptIfPrefix(byte[] prefix) {
+        return acceptIfEquals(0, prefix);
+    }
+
+    /**
+     * Creates a filter that accepts only messages containing the given bytes
+     * at the given offset. Messages that are too short are dropped.
+     *
+     * @param offset The offset of the field within the message
+     * @param expected The expected field contents
+     * @return The filter
+     */
+    public static SocketFilter acceptIfEquals(int offset, byte[] expected) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid offset");
+        }
+        if (expected.length == 0) {
+            return builder().accept().build();
+        }
+        // Compare in words, half-words and bytes
+        int chunks = expected.length / 4 + (expected.length % 4) / 2 + expected.length % 2;
+        if (2 * chunks - 1 > 255) {
+            throw new IllegalArgumentException("Field too long");
+        }
+        Builder b = builder();
+        int pos = 0;
+        for (int i = 0; i < chunks; i++) {
+            int left = expected.length - pos;
+            // Jump to the final drop instruction on mismatch
+            int toDrop = 2 * (chunks - i) - 1;
+            if (left >= 4) {
+                b.loadWord(offset + pos).jumpIfEqual(bigEndian(expected, pos, 4), 0, toDrop);
+                pos += 4;
+            } else if (left >= 2) {
+                b.loadHalf(offset + pos).jumpIfEqual(bigEndian(expected, pos, 2), 0, toDrop);
+                pos += 2;
+            } else {
+                b.loadByte(offset + pos).jumpIfEqual(bigEndian(expected, pos, 1), 0, toDrop);
+                pos += 1;
+            }
+        }
+        return b.accept().drop().build();
+    }
+
+    private static int bigEndian(byte[] bytes, int offset, int length) {
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * Retrieves the number of instructions of this program.
+     *
+     * @return The program length
+     */
+    public int length() {
+        return code.length;
+    }
+
+    /**
+     * Copies this program into native memory. The returned memory starts with
+     * a struct sock_fprog of {@link #fprogSize} bytes, immediately followed by
+     * the instruction array it points to, so both stay reachable together.
+     *
+     * @param runtime The runtime to allocate memory from
+     * @return The struct sock_fprog
+     */
+    Pointer toNative(Runtime runtime) {
+        int header = fprogSize(runtime);
+        Pointer fprog = Memory.allocateDirect(runtime, header + code.length * INSTRUCTION_SIZE);
+        for (int i = 0; i < code.length; i++) {
+            long off = header + (long) i * INSTRUCTION_SIZE;
+            fprog.putShort(off, (short) code[i]);
+            fprog.putByte(off + 2, (byte) jt[i]);
+            fprog.putByte(off + 3, (byte) jf[i]);
+            fprog.putInt(off + 4, k[i]);
+        }
+        fprog.putShort(0, (short) code.length);
+        fprog.putAddress(runtime.addressSize(), fprog.address() + header);
+        return fprog;
+    }
+
+    /**
+     * Gets the size of struct sock_fprog, which is an unsigned short
+     * followed by a pointer.
+     *
+     * @param runtime The runtime
+     * @return The size in bytes
+     */
+    static int fprogSize(Runtime runtime) {
+        return 2 * runtime.addressSize();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof SocketFilter)) {
+            return false;
+        }
+        SocketFilter o = (SocketFilter) other;
+        return Arrays.equals(code, o.code) && Arrays.equals(jt, o.jt)
+            && Arrays.equals(jf, o.jf) && Arrays.equals(k, o.k);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(code) + Arrays.hashCode(k);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < code.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format("{ 0x%02x, %d, %d, 0x%08x }", code[i], jt[i], jf[i], k[i]));
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Assembles a classic BPF program. Jump offsets are relative to the
+     * instruction following the jump.
+     */
+    public static final class Builder {
+        private int[] code = new int[16];
+        private int[] jt = new int[16];
+        private int[] jf = new int[16];
+        private int[] k = new int[16];
+        private int length = 0;
+
+        private Builder() {
+        }
+
+        /**
+         * Appends a raw instruction.
+         *
+         * @param opcode The instruction opcode
+         * @param jumpTrue The jump offset if a condition is true
+         * @param jumpFalse The jump offset if a condition is false
+         * @param operand The generic operand
+         * @return This builder
+         */
+        public Builder instruction(int opcode, int jumpTrue, int jumpFalse, int operand) {
+            if (jumpTrue < 0 || jumpTrue > 255 || jumpFalse < 0 || jumpFalse > 255) {
+                throw new IllegalArgumentException("Invalid jump offset");
+            }
+            if (length == MAX_INSTRUCTIONS) {
+                throw new IllegalStateException("Program too long");
+            }
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+                jt = Arrays.copyOf(jt, length * 2);
+                jf = Arrays.copyOf(jf, length * 2);
+                k = Arrays.copyOf(k, length * 2);
+            }
+            code[length] = opcode & 0xffff;
+            jt[length] = jumpTrue;
+            jf[length] = jumpFalse;
+            k[length] = operand;
+            length++;
+            return this;
+        }
+
+        /** Loads the 32-bit big-endian word at the given offset into the accumulator. */
+        public Builder loadWord(int offset) {
+            return instruction(BPF_LD | BPF_W | BPF_ABS, 0, 0, offset);
+        }
+
+        /** Loads the 16-bit big-endian half-word at the given offset into the accumulator. */
+        public Builder loadHalf(int offset) {
+            return instruction(BPF_LD | BPF_H | BPF_ABS, 0, 0, offset);
+        }
+
+        /** Loads the byte at the given offset into the accumulator. */
+        public Builder loadByte(int offset) {
+            return instruction(BPF_LD | BPF_B | BPF_ABS, 0, 0, offset);
+        }
+
+        /** Loads the message length into the accumulator. */
+        public Builder loadLength() {
+            return instruction(BPF_LD | BPF_W | BPF_LEN, 0, 0, 0);
+        }
+
+        /** Masks the accumulator with the given value. */
+        public Builder and(int mask) {
+            return instruction(BPF_ALU | BPF_AND | BPF_K, 0, 0, mask);
+        }
+
+        /** Skips the given number of instructions unconditionally. */
+        public Builder jump(int offset) {
+            return instruction(BPF_JMP | BPF_JA, 0, 0, offset);
+        }
+
+        /** Branches on accumulator == value. */
+        public Builder jumpIfEqual(int value, int jumpTrue, int jumpFalse) {
+            return instruction(BPF_JMP | BPF_JEQ | BPF_K, jumpTrue, jumpFalse, value);
+        }
+
+        /** Branches on accumulator &gt; value (unsigned). */
+        public Builder jumpIfGreater(int value, int jumpTrue, int jumpFalse) {
+            return instruction(BPF_JMP | BPF_JGT | BPF_K, jumpTrue, jumpFalse, value);
+        }
+
+        /** Branches on accumulator &gt;= value (unsigned). */
+        public Builder jumpIfGreaterOrEqual(int value, int jumpTrue, int jumpFalse) {
+            return instruction(BPF_JMP | BPF_JGE | BPF_K, jumpTrue, jumpFalse, value);
+        }
+
+        /** Branches on (accumulator &amp; mask) != 0. */
+        public Builder jumpIfSet(int mask, int jumpTrue, int jumpFalse) {
+            return instruction(BPF_JMP | BPF_JSET | BPF_K, jumpTrue, jumpFalse, mask);
+        }
+
+        /** Accepts the whole message. */
+        public Builder accept() {
+            return instruction(BPF_RET | BPF_K, 0, 0, -1);
+        }
+
+        /** Accepts at most the given number of bytes of the message. */
+        public Builder accept(int bytes) {
+            return instruction(BPF_RET | BPF_K, 0, 0, bytes);
+        }
+
+        /** Drops the message. */
+        public Builder drop() {
+            return instruction(BPF_RET | BPF_K, 0, 0, 0);
+        }
+
+        /**
+         * Creates the program.
+         *
+         * @return The socket filter
+         */
+        public SocketFilter build() {
+            if (length == 0) {
+                throw new IllegalStateException("Empty program");
+            }
+            return new SocketFilter(Arrays.copyOf(code, length), Arrays.copyOf(jt, length),
+                Arrays.copyOf(jf, length), Arrays.copyOf(k, length));
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.IllegalBlockingModeException;
+
+import jnr.constants.platform.Errno;
+import jnr.constants.platform.Shutdown;
+import jnr.enxio.channels.NativeException;
+import jnr.enxio.channels.NativeSelectableChannel;
+import jnr.ffi.Platform;
+
+/**
+ * Relays bytes in both directions between two fd-backed channels with
+ * splice(2), moving them through a kernel pipe without copying them into
+ * user space.
+ * <p>
+ * Each direction is pumped independently, either by {@link #run()}, which
+ * blocks until both directions have reached end-of-stream, or by calling
+ * {@link #forward()} and {@link #backward()} when the source channel is ready,
+ * e.g. from a selector loop with non-blocking channels. When a source reaches
+ * end-of-stream, the output of the opposite channel is shut down, so
+ * half-closes propagate through the relay.
+ * <p>
+ * The relay does not close the channels. splice(2) is only available on Linux.
+ */
+public final class SpliceRelay implements Closeable {
+    private static final int SPLICE_F_MOVE = 1;
+    private static final int SPLICE_F_MORE = 4;
+    private static final long CHUNK_SIZE = 64 * 1024;
+    private static final int SHUT_RD = Shutdown.SHUT_RD.intValue();
+    private static final int SHUT_WR = Shutdown.SHUT_WR.intValue();
+    private static final int O_CLOEXEC = 0x80000;
+
+    private final Pump forward;
+    private final Pump backward;
+
+    /**
+     * Creates a relay between two channels.
+     *
+     * @param a The first channel
+     * @param b The second channel
+     * @throws UnsupportedOperationException if splice(2) is not available
+     * @throws IOException if the pipes could not be created
+     */
+    public SpliceRelay(NativeSelectableChannel a, NativeSelectableChannel b) throws IOException {
+        if (Platform.getNativePlatform().getOS() != Platform.OS.LINUX) {
+            throw new UnsupportedOperationException("splice is only supported on Linux");
+        }
+        forward = new Pump(a.getFD(), b.getFD());
+        try {
+            backward = new Pump(b.getFD(), a.getFD());
+        } catch (IOException e) {
+            forward.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves the bytes currently available from the first to the second channel.
+     *
+     * @return The number of bytes moved, or -1 once the first channel has
+     *         reached end-of-stream and all its bytes were delivered
+     * @throws IOException if splicing failed
+     */
+    public long forward() throws IOException {
+        return forward.pump();
+    }
+
+    /**
+     * Moves the bytes currently available from the second to the first channel.
+     *
+     * @return The number of bytes moved, or -1 once the second channel has
+     *         reached end-of-stream and all its bytes were delivered
+     * @throws IOException if splicing failed
+     */
+    public long backward() throws IOException {
+        return backward.pump();
+    }
+
+    /**
+     * Relays in both directions until both channels have reached end-of-stream.
+     * The backward direction is pumped by a helper thread. Both channels must
+     * be in blocking mode. If relaying stops early, the helper thread is
+     * stopped by shutting down the backward direction, and joined before this
+     * method returns.
+     *
+     * @throws IllegalBlockingModeException if either channel is non-blocking
+     * @throws IOException if splicing failed in either direction
+     * @throws InterruptedException if interrupted while waiting for the helper thread
+     */
+    public void run() throws IOException, InterruptedException {
+        if (isNonBlocking(forward.source) || isNonBlocking(backward.source)) {
+            // splice would return EAGAIN at once and the loops below would spin
+            throw new IllegalBlockingModeException();
+        }
+        final IOException[] failure = new IOException[1];
+        Thread helper = new Thread("splice relay") {
+            @Override
+            public void run() {
+                try {
+                    while (backward.pump() >= 0) {
+                        continue;
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        helper.setDaemon(true);
+        helper.start();
+        boolean completed = false;
+        try {
+            while (forward.pump() >= 0) {
+                continue;
+            }
+            helper.join();
+            completed = true;
+        } finally {
+            if (!completed) {
+                backward.abort();
+                joinUninterruptibly(helper);
+            }
+        }
+        if (null != failure[0]) {
+            throw failure[0];
+        }
+    }
+
+    private static boolean isNonBlocking(int fd) {
+        int flags = Native.libc().fcntl(fd, Native.LibC.F_GETFL, 0);
+        return flags >= 0 && (flags & Native.LibC.O_NONBLOCK) != 0;
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Retrieves the number of bytes moved from the first to the second channel.
+     *
+     * @return The byte count
+     */
+    public long getForwardBytes() {
+        return forward.transferred;
+    }
+
+    /**
+     * Retrieves the number of bytes moved from the second to the first channel.
+     *
+     * @return The byte count
+     */
+    public long getBackwardBytes() {
+        return backward.transferred;
+    }
+
+    /**
+     * Closes the pipes of this relay. The channels are left open.
+     */
+    @Override
+    public void close() {
+        forward.close();
+        backward.close();
+    }
+
+    private static long splice(int in, int out, long len) {
+        long n;
+        do {
+            n = Native.libc().splice(in, null, out, null, len, SPLICE_F_MOVE | SPLICE_F_MORE);
+        } while (n < 0 && Errno.EINTR.equals(Native.getLastError()));
+        return n;
+    }
+
+    /**
+     * One direction of the relay: source -&gt; pipe -&gt; sink.
+     */
+    private static final class Pump {
+        private final int source;
+        private final int sink;
+        private final int[] pipe = { -1, -1 };
+        private long pending = 0;
+        private boolean eof = false;
+        private boolean shutdown = false;
+        volatile long transferred = 0;
+
+        Pump(int source, int sink) throws IOException {
+            this.source = source;
+            this.sink = sink;
+            if (Native.libc().pipe2(pipe, O_CLOEXEC) < 0) {
+                throw new IOException("pipe2(2) failed " + Native.getLastErrorString());
+            }
+        }
+
+        synchronized long pump() throws IOException {
+            if (0 == pending && !eof) {
+                long n = splice(source, pipe[1], CHUNK_SIZE);
+                if (n == 0) {
+                    eof = true;
+                } else if (n < 0) {
+                    return wouldBlock();
+                } else {
+                    pending = n;
+                }
+            }
+
+            long moved = 0;
+            while (pending > 0) {
+                long n = splice(pipe[0], sink, pending);
+                if (n < 0) {
+                    wouldBlock();
+                    break;
+                }
+                pending -= n;
+                moved += n;
+            }
+            transferred += moved;
+
+            if (eof && 0 == pending) {
+                if (!shutdown) {
+                    shutdown = true;
+                    // Propagate the half-close; sinks that are not sockets are left alone
+                    if (Native.libc().shutdown(sink, SHUT_WR) < 0
+                            && Native.getLastError() != Errno.ENOTSOCK
+                            && Native.getLastError() != Errno.ENOTCONN) {
+                        throw new NativeException(Native.getLastErrorString(), Native.getLastError());
+                    }
+                }
+                return moved > 0 ? moved : -1;
+            }
+            return moved;
+        }
+
+        /**
+         * Wakes up a pump blocked in splice: the source then reads
+         * end-of-stream and the sink fails to accept more bytes. Does nothing
+         * for descriptors that are not sockets.
+         */
+        void abort() {
+            Native.libc().shutdown(source, SHUT_RD);
+            Native.libc().shutdown(sink, SHUT_WR);
+        }
+
+        private static long wouldBlock() throws IOException {
+            Errno error = Native.getLastError();
+            if (error == Errno.EAGAIN || error == Errno.EWOULDBLOCK) {
+                return 0;
+            }
+            throw new NativeException(Native.getLastErrorString(), error);
+        }
+
+        synchronized void close() {
+            for (int i = 0; i < pipe.length; i++) {
+                if (pipe[i] >= 0) {
+                    Native.libc().close(pipe[i]);
+                    pipe[i] = -1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jnr.unixsocket;
+
+import jnr.constants.platform.Errno;
+
+/**
+ * Observes, and may fail, the system calls made by the channels of this
+ * library: the socket calls of {@code Native} and the reads and writes of
+ * the stream and datagram channel implementations.
+ * <p>
+ * Interceptors are found with {@link java.util.ServiceLoader} when the
+ * library is first used, or installed with {@link Syscalls#install}. To keep
+ * the calls free of any overhead otherwise, interception has to be enabled
+ * at startup: by a service provider, or by setting the system property
+ * {@code jnr.unixsocket.syscalls.intercept} to true.
+ * <p>
+ * Interceptors are invoked on the calling thread, in the middle of channel
+ * operations, so they must be fast and must not block.
+ */
+public interface SyscallInterceptor {
+    /**
+     * The intercepted calls.
+     */
+    enum Syscall {
+        SOCKET,
+        SOCKETPAIR,
+        BIND,
+        LISTEN,
+        ACCEPT,
+        CONNECT,
+        GETSOCKNAME,
+        GETPEERNAME,
+        GETSOCKOPT,
+        SETSOCKOPT,
+        READ,
+        WRITE,
+        SEND,
+        SENDTO,
+        RECV,
+        RECVFROM,
+    }
+
+    /**
+     * Invoked before a call is made.
+     *
+     * @param call The call
+     * @param fd The file descriptor, or -1 if the call creates one
+     * @param requested The number of bytes to transfer, or 0
+     * @return null to make the call, or an error to fail it with instead
+     */
+    Errno before(Syscall call, int fd, long requested);
+
+    /**
+     * Invoked after a call has returned, or has been failed by an interceptor.
+     *
+     * @param call The call
+     * @param fd The file descriptor, or -1 if the call creates one
+     * @param requested The number of bytes to transfer, or 0
+     * @param result The result of the call
+     * @param error The error if the call failed, otherwise null
+     * @param nanos The time spent in the call, 0 if it was not made
+     */
+    void after(Syscall call, int fd, long requested, long result, Errno error, long nanos);
+}
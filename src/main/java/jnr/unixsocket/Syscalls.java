@@ -0,0 +1,142 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jnr.unixsocket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import jnr.constants.platform.Errno;
+import jnr.ffi.LastError;
+import jnr.ffi.Runtime;
+import jnr.unixsocket.SyscallInterceptor.Syscall;
+
+/**
+ * Dispatches system calls to the installed {@link SyscallInterceptor}s.
+ * <p>
+ * {@link #begin} and {@link #end} enclose every intercepted call; they are
+ * public for the channel implementations only. When interception is not
+ * enabled, both reduce to a constant the JIT folds away.
+ */
+public final class Syscalls {
+    /** Returned by {@link #begin} when an interceptor failed the call. */
+    public static final long FAILED = Long.MIN_VALUE;
+    private static final long UNTIMED = Long.MIN_VALUE + 1;
+    private static final SyscallInterceptor[] NONE = new SyscallInterceptor[0];
+
+    private static final boolean ENABLED;
+    private static volatile SyscallInterceptor[] interceptors = NONE;
+
+    static {
+        List<SyscallInterceptor> found = new ArrayList<SyscallInterceptor>();
+        for (SyscallInterceptor interceptor : ServiceLoader.load(SyscallInterceptor.class)) {
+            found.add(interceptor);
+        }
+        interceptors = found.toArray(NONE);
+        ENABLED = !found.isEmpty() || Boolean.getBoolean("jnr.unixsocket.syscalls.intercept");
+    }
+
+    private Syscalls() {
+    }
+
+    /**
+     * Checks whether interception has been enabled at startup.
+     *
+     * @return true if interceptors can be installed
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Installs an interceptor, which is invoked after those installed before.
+     *
+     * @param interceptor The interceptor
+     * @throws IllegalStateException if interception has not been enabled at startup
+     */
+    public static synchronized void install(SyscallInterceptor interceptor) {
+        if (!ENABLED) {
+            throw new IllegalStateException("set jnr.unixsocket.syscalls.intercept=true to enable interception");
+        }
+        SyscallInterceptor[] a = Arrays.copyOf(interceptors, interceptors.length + 1);
+        a[a.length - 1] = interceptor;
+        interceptors = a;
+    }
+
+    /**
+     * Removes an interceptor.
+     *
+     * @param interceptor The interceptor
+     * @return true if it was installed
+     */
+    public static synchronized boolean uninstall(SyscallInterceptor interceptor) {
+        List<SyscallInterceptor> list = new ArrayList<SyscallInterceptor>(Arrays.asList(interceptors));
+        boolean removed = list.remove(interceptor);
+        interceptors = list.toArray(NONE);
+        return removed;
+    }
+
+    /**
+     * Starts an intercepted call.
+     *
+     * @return {@link #FAILED} if the call must not be made, in which case
+     *         errno has been set; otherwise a value for {@link #end}
+     */
+    public static long begin(Syscall call, int fd, long requested) {
+        if (!ENABLED) {
+            return 0;
+        }
+        SyscallInterceptor[] a = interceptors;
+        if (a.length == 0) {
+            return UNTIMED;
+        }
+        for (SyscallInterceptor interceptor : a) {
+            Errno error = interceptor.before(call, fd, requested);
+            if (null != error) {
+                LastError.setLastError(Runtime.getSystemRuntime(), error.intValue());
+                return FAILED;
+            }
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Completes an intercepted call. errno is preserved.
+     *
+     * @param start The value returned by {@link #begin}
+     */
+    public static void end(Syscall call, int fd, long requested, long result, long start) {
+        if (!ENABLED || start == UNTIMED) {
+            return;
+        }
+        long nanos = start == FAILED ? 0 : System.nanoTime() - start;
+        Errno error = null;
+        int errno = 0;
+        if (result < 0) {
+            errno = LastError.getLastError(Runtime.getSystemRuntime());
+            error = Errno.valueOf(errno);
+        }
+        for (SyscallInterceptor interceptor : interceptors) {
+            interceptor.after(call, fd, requested, result, error, nanos);
+        }
+        if (result < 0) {
+            LastError.setLastError(Runtime.getSystemRuntime(), errno);
+        }
+    }
+}
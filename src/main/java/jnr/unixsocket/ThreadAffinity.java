@@ -0,0 +1,98 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import jnr.ffi.Platform;
+
+/**
+ * CPU affinity of the calling thread, via sched_setaffinity(2).
+ * Only supported on Linux.
+ */
+public final class ThreadAffinity {
+    // Size of the glibc cpu_set_t, enough for 1024 CPUs
+    private static final int CPU_SETSIZE = 1024;
+
+    private ThreadAffinity() {
+    }
+
+    /**
+     * Checks whether thread affinity is supported on this platform.
+     *
+     * @return true on Linux
+     */
+    public static boolean isSupported() {
+        return Platform.getNativePlatform().getOS() == Platform.OS.LINUX;
+    }
+
+    private static void checkSupported() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("thread affinity is only supported on Linux");
+        }
+    }
+
+    /**
+     * Retrieves the CPUs the calling thread may run on.
+     *
+     * @return The set of CPU numbers
+     * @throws IOException if the affinity could not be retrieved
+     */
+    public static BitSet get() throws IOException {
+        checkSupported();
+        byte[] mask = new byte[CPU_SETSIZE / 8];
+        if (Native.libc().sched_getaffinity(0, mask.length, mask) < 0) {
+            throw new IOException("sched_getaffinity failed: " + Native.getLastErrorString());
+        }
+        return BitSet.valueOf(mask);
+    }
+
+    /**
+     * Restricts the calling thread to a set of CPUs.
+     *
+     * @param cpus The set of CPU numbers
+     * @throws IOException if the affinity could not be set
+     */
+    public static void set(BitSet cpus) throws IOException {
+        checkSupported();
+        if (cpus.isEmpty()) {
+            throw new IllegalArgumentException("CPU set may not be empty");
+        }
+        if (cpus.length() > CPU_SETSIZE) {
+            throw new IllegalArgumentException("CPU number out of range");
+        }
+        byte[] mask = new byte[CPU_SETSIZE / 8];
+        byte[] bits = cpus.toByteArray();
+        System.arraycopy(bits, 0, mask, 0, bits.length);
+        if (Native.libc().sched_setaffinity(0, mask.length, mask) < 0) {
+            throw new IOException("sched_setaffinity failed: " + Native.getLastErrorString());
+        }
+    }
+
+    /**
+     * Pins the calling thread to a single CPU.
+     *
+     * @param cpu The CPU number
+     * @throws IOException if the affinity could not be set
+     */
+    public static void set(int cpu) throws IOException {
+        BitSet cpus = new BitSet();
+        cpus.set(cpu);
+        set(cpus);
+    }
+}
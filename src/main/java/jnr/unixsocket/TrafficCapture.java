@@ -0,0 +1,412 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jnr.unixsocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Captures the traffic of channels into a memory-mapped ring file, as a
+ * substitute for tcpdump, which cannot see UNIX domain sockets.
+ * <p>
+ * A capture is attached to channels with {@link UnixSocketChannel#setCapture}
+ * or {@link UnixDatagramChannel#setCapture}, and detached again by passing
+ * null; any number of channels may share one capture. Recording a transfer
+ * copies its payload into the mapped file, whose pages the kernel writes back
+ * asynchronously. When the ring is full, the oldest records are overwritten.
+ * With sampling, only a random share of the transfers is recorded. A
+ * transfer that cannot be recorded is counted in
+ * {@link #getRecordFailures()}; it never fails the I/O operation.
+ * <p>
+ * The payload is copied synchronously by the thread doing the I/O, under
+ * a single monitor per capture, so channels sharing a capture serialize on
+ * it. Under heavy traffic, keep the snap length small, sample, or give busy
+ * channels a capture of their own.
+ * <p>
+ * The file starts with a 64 byte header, followed by the ring:
+ * <pre>
+ *  0  magic "JNRUXCAP"         8  int version (1)
+ * 12  int header size (64)    16  long ring capacity
+ * 24  long head               32  long tail
+ * 40  long records written    48  long records overwritten
+ * </pre>
+ * Head and tail are ever-increasing byte counts; a record starts at its
+ * count modulo the capacity, and never wraps around. Each record is aligned
+ * to 8 bytes and starts with a 32 byte header:
+ * <pre>
+ *  0  int record length        4  int captured payload length
+ *  8  int original length     12  int fd
+ * 16  long timestamp, nanoseconds since the epoch
+ * 24  byte direction, 0 for received and 1 for sent data
+ * </pre>
+ * A record length of -1 marks the unused end of the ring. All values are
+ * little-endian. Use {@link #read} to decode a file.
+ */
+public final class TrafficCapture implements Closeable {
+    /**
+     * The direction of a transfer.
+     */
+    public enum Direction {
+        /** Data read or received by the channel. */
+        IN,
+        /** Data written or sent by the channel. */
+        OUT,
+    }
+
+    private static final byte[] MAGIC = "JNRUXCAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_HEADER_SIZE = 32;
+    private static final int WRAP = -1;
+    private static final int HEAD = 24;
+    private static final int TAIL = 32;
+    private static final int WRITTEN = 40;
+    private static final int OVERWRITTEN = 48;
+
+    private final FileChannel file;
+    private final MappedByteBuffer map;
+    private final long capacity;
+    private final int snapLength;
+    private final long epochOffset;
+    private volatile int sampling = 1;
+    private long head = 0;
+    private long tail = 0;
+    private long written = 0;
+    private long overwritten = 0;
+    private long failures = 0;
+    private boolean closed = false;
+
+    private TrafficCapture(FileChannel file, MappedByteBuffer map, int capacity, int snapLength) {
+        this.file = file;
+        this.map = map;
+        this.capacity = capacity;
+        this.snapLength = snapLength;
+        this.epochOffset = System.currentTimeMillis() * 1000000L - System.nanoTime();
+    }
+
+    /**
+     * Creates a capture file, replacing an existing one.
+     *
+     * @param path The file
+     * @param capacity The size of the ring in bytes, enough for at least
+     *        four records of the full snap length
+     * @param snapLength The maximum number of payload bytes recorded per
+     *        transfer
+     * @return The capture
+     * @throws IOException if the file could not be created
+     */
+    public static TrafficCapture open(Path path, int capacity, int snapLength) throws IOException {
+        if (snapLength < 0 || snapLength > Integer.MAX_VALUE - RECORD_HEADER_SIZE - 7) {
+            throw new IllegalArgumentException("snap length out of range: " + snapLength);
+        }
+        int ring = capacity & ~7;
+        if (ring < 4L * recordSize(snapLength)) {
+            throw new IllegalArgumentException("capacity must hold at least four records of "
+                    + recordSize(snapLength) + " bytes");
+        }
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            MappedByteBuffer map = file.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + ring);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.put(MAGIC).putInt(VERSION).putInt(HEADER_SIZE).putLong(ring);
+            return new TrafficCapture(file, map, ring, snapLength);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        } catch (RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private static int recordSize(int captured) {
+        return (RECORD_HEADER_SIZE + captured + 7) & ~7;
+    }
+
+    /**
+     * Records only one in a number of transfers, chosen at random.
+     *
+     * @param oneIn The sampling ratio, 1 to record every transfer
+     */
+    public void setSampling(int oneIn) {
+        if (oneIn < 1) {
+            throw new IllegalArgumentException("sampling ratio must be at least 1");
+        }
+        sampling = oneIn;
+    }
+
+    public int getSampling() {
+        return sampling;
+    }
+
+    /**
+     * Retrieves the number of records written so far.
+     *
+     * @return The number of records
+     */
+    public synchronized long getRecordsWritten() {
+        return written;
+    }
+
+    /**
+     * Retrieves the number of records lost because the ring was full.
+     *
+     * @return The number of records
+     */
+    public synchronized long getRecordsOverwritten() {
+        return overwritten;
+    }
+
+    /**
+     * Retrieves the number of transfers that could not be recorded.
+     *
+     * @return The number of transfers
+     */
+    public synchronized long getRecordFailures() {
+        return failures;
+    }
+
+    /**
+     * Records a transfer unless it is not sampled. Failures are counted
+     * rather than thrown, so capturing never breaks the channel's I/O.
+     *
+     * @param direction The direction
+     * @param fd The file descriptor of the channel
+     * @param buffer The buffer holding the payload
+     * @param position The position of the payload in the buffer
+     * @param length The length of the payload
+     */
+    void record(Direction direction, int fd, ByteBuffer buffer, int position, int length) {
+        int oneIn = sampling;
+        if (oneIn > 1 && ThreadLocalRandom.current().nextInt(oneIn) != 0) {
+            return;
+        }
+        long timestamp = epochOffset + System.nanoTime();
+        int captured = Math.min(length, snapLength);
+        int size = recordSize(captured);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                append(direction, fd, buffer, position, length, captured, size, timestamp);
+            } catch (RuntimeException e) {
+                failures++;
+            } catch (InternalError e) {
+                // an I/O error on the mapped file surfaces as a fault in unsafe memory access
+                failures++;
+            }
+        }
+    }
+
+    /**
+     * Appends a record, evicting the oldest ones as needed. Called with the monitor held.
+     */
+    private void append(Direction direction, int fd, ByteBuffer buffer, int position, int length,
+            int captured, int size, long timestamp) {
+        long start = tail;
+        int offset = (int) (start % capacity);
+        long pad = offset + size > capacity ? capacity - offset : 0;
+        long end = start + pad + size;
+        while (end - head > capacity) {
+            if (head == start) {
+                // everything else is gone, the ring resumes after the padding
+                head = start + pad;
+                map.putLong(HEAD, head);
+                break;
+            }
+            evict();
+        }
+        if (pad > 0) {
+            map.putInt(HEADER_SIZE + offset, WRAP);
+            offset = 0;
+        }
+        int at = HEADER_SIZE + offset;
+        map.putInt(at, size);
+        map.putInt(at + 4, captured);
+        map.putInt(at + 8, length);
+        map.putInt(at + 12, fd);
+        map.putLong(at + 16, timestamp);
+        map.put(at + 24, (byte) direction.ordinal());
+        map.position(at + RECORD_HEADER_SIZE);
+        if (buffer.hasArray()) {
+            map.put(buffer.array(), buffer.arrayOffset() + position, captured);
+        } else {
+            ByteBuffer payload = buffer.duplicate();
+            payload.limit(position + captured).position(position);
+            map.put(payload);
+        }
+        tail = end;
+        written++;
+        map.putLong(WRITTEN, written);
+        map.putLong(TAIL, tail);
+    }
+
+    private void evict() {
+        int offset = (int) (head % capacity);
+        int size = map.getInt(HEADER_SIZE + offset);
+        if (size == WRAP) {
+            head += capacity - offset;
+        } else {
+            head += size;
+            overwritten++;
+            map.putLong(OVERWRITTEN, overwritten);
+        }
+        map.putLong(HEAD, head);
+    }
+
+    void record(Direction direction, int fd, ByteBuffer[] buffers, int offset, int[] positions, long length) {
+        for (int i = 0; i < positions.length && length > 0; i++) {
+            ByteBuffer buffer = buffers[offset + i];
+            int n = (int) Math.min(buffer.position() - positions[i], length);
+            if (n > 0) {
+                record(direction, fd, buffer, positions[i], n);
+                length -= n;
+            }
+        }
+    }
+
+    static int[] positions(ByteBuffer[] buffers, int offset, int length) {
+        int[] positions = new int[length];
+        for (int i = 0; i < length; i++) {
+            positions[i] = buffers[offset + i].position();
+        }
+        return positions;
+    }
+
+    /**
+     * Stops capturing and flushes the file. Channels may remain attached;
+     * their traffic is no longer recorded.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            map.force();
+        }
+        file.close();
+    }
+
+    /**
+     * A captured transfer.
+     */
+    public static final class Record {
+        private final Direction direction;
+        private final long timestamp;
+        private final int fd;
+        private final int length;
+        private final byte[] payload;
+
+        Record(Direction direction, long timestamp, int fd, int length, byte[] payload) {
+            this.direction = direction;
+            this.timestamp = timestamp;
+            this.fd = fd;
+            this.length = length;
+            this.payload = payload;
+        }
+
+        public Direction getDirection() {
+            return direction;
+        }
+
+        /**
+         * Retrieves the time of the transfer.
+         *
+         * @return The time in nanoseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public int getFd() {
+            return fd;
+        }
+
+        /**
+         * Retrieves the length of the transfer, which may exceed the length
+         * of the captured payload.
+         *
+         * @return The number of bytes transferred
+         */
+        public int getLength() {
+            return length;
+        }
+
+        public byte[] getPayload() {
+            return payload.clone();
+        }
+    }
+
+    /**
+     * Decodes the records of a capture file, oldest first.
+     *
+     * @param path The file
+     * @return The records
+     * @throws IOException if the file could not be read or is no capture file
+     */
+    public static List<Record> read(Path path) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer map = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            map.get(magic);
+            if (!java.util.Arrays.equals(MAGIC, magic) || map.getInt(8) != VERSION) {
+                throw new IOException("not a capture file: " + path);
+            }
+            int headerSize = map.getInt(12);
+            long capacity = map.getLong(16);
+            long pos = map.getLong(HEAD);
+            long tail = map.getLong(TAIL);
+            List<Record> records = new ArrayList<Record>();
+            while (pos < tail) {
+                int offset = (int) (pos % capacity);
+                int size = map.getInt(headerSize + offset);
+                if (size == WRAP) {
+                    pos += capacity - offset;
+                    continue;
+                }
+                int at = headerSize + offset;
+                byte[] payload = new byte[map.getInt(at + 4)];
+                map.position(at + RECORD_HEADER_SIZE);
+                map.get(payload);
+                records.add(new Record(Direction.values()[map.get(at + 24)], map.getLong(at + 16),
+                        map.getInt(at + 12), map.getInt(at + 8), payload));
+                pos += size;
+            }
+            return records;
+        } finally {
+            file.close();
+        }
+    }
+}
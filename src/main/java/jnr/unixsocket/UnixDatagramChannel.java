@@ -38,8 +38,11 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
+import jnr.constants.platform.Errno;
 import jnr.constants.platform.ProtocolFamily;
 import jnr.constants.platform.Sock;
+import jnr.enxio.channels.NativeException;
+import jnr.ffi.Platform;
 import jnr.unixsocket.impl.AbstractNativeDatagramChannel;
 
 public class UnixDatagramChannel extends AbstractNativeDatagramChannel {
@@ -53,6 +56,13 @@ public class UnixDatagramChannel extends AbstractNativeDatagramChannel {
     private UnixSocketAddress localAddress = null;
     private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
     private final BindHandler bindHandler;
+    private volatile BusyPoll busyPoll = null;
+    private volatile ChannelStats stats = null;
+    private volatile TrafficCapture capture = null;
+
+    // Reports the full length of truncated datagrams; other systems would
+    // interpret the flag differently, or not at all
+    private static final int TRUNC = Platform.getNativePlatform().getOS() == Platform.OS.LINUX ? Native.MSG_TRUNC : 0;
 
     public static final UnixDatagramChannel open() throws IOException {
         return new UnixDatagramChannel();
@@ -106,19 +116,47 @@ public class UnixDatagramChannel extends AbstractNativeDatagramChannel {
         return this;
     }
 
-    public UnixDatagramChannel connect(UnixSocketAddress remote) {
+    /**
+     * Connects this channel's socket to the given address.
+     * <p>
+     * The socket is connected at the kernel level, so subsequent sends without
+     * an explicit destination do not have to resolve the peer's path again, and
+     * only datagrams from the peer are received.
+     *
+     * @param remote The remote address to connect to
+     * @return This datagram channel
+     * @throws IOException if connect(2) fails
+     */
+    public UnixDatagramChannel connect(UnixSocketAddress remote) throws IOException {
         stateLock.writeLock().lock();
-        remoteAddress = remote;
-        state = State.CONNECTED;
-        stateLock.writeLock().unlock();
+        try {
+            SockAddrUnix sa = remote.getStruct();
+            if (Native.connect(getFD(), sa, sa.length()) < 0) {
+                throw new NativeException(Native.getLastErrorString(), Native.getLastError());
+            }
+            remoteAddress = remote;
+            state = State.CONNECTED;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
         return this;
     }
 
     public UnixDatagramChannel disconnect() throws IOException {
         stateLock.writeLock().lock();
-        remoteAddress = null;
-        state = State.IDLE;
-        stateLock.writeLock().unlock();
+        try {
+            if (state == State.CONNECTED && Native.disconnect(getFD()) < 0) {
+                Errno error = Native.getLastError();
+                // Not every platform can dissolve an association via AF_UNSPEC
+                if (error != Errno.EAFNOSUPPORT) {
+                    throw new IOException(Native.getLastErrorString());
+                }
+            }
+            remoteAddress = null;
+            state = State.IDLE;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
         return this;
     }
 
@@ -146,32 +184,89 @@ public class UnixDatagramChannel extends AbstractNativeDatagramChannel {
 
     @Override
     public UnixSocketAddress receive(ByteBuffer src) throws IOException {
+        TrafficCapture c = capture;
+        Object event = SocketEvents.begin(SocketEvents.RECEIVE);
+        if (null == event && null == c) {
+            return receiveImpl(src);
+        }
+        int position = src.position();
+        UnixSocketAddress remote = null;
+        try {
+            remote = receiveImpl(src);
+            if (null != c) {
+                c.record(TrafficCapture.Direction.IN, getFD(), src, position, src.position() - position);
+            }
+        } finally {
+            SocketEvents.commit(SocketEvents.RECEIVE, event, this, remote, src.position() - position);
+        }
+        return remote;
+    }
+
+    private UnixSocketAddress receiveImpl(ByteBuffer src) throws IOException {
         UnixSocketAddress remote = new UnixSocketAddress();
-        int n = Native.recvfrom(getFD(), src, remote.getStruct());
+        ChannelStats s = stats;
+        int requested = src.remaining();
+        BusyPoll policy = busyPoll;
+        if (null != policy && isBlocking()
+                && policy.spin(getFD(), src, remote.getStruct()) != BusyPoll.EXHAUSTED) {
+            if (null != s) {
+                s.received(requested, requested - src.remaining());
+            }
+            return remote;
+        }
+        int n = Native.recvfrom(getFD(), src, remote.getStruct(), null == s ? 0 : TRUNC);
         if (n < 0) {
+            Errno error = Native.getLastError();
+            if (null != s && (error == Errno.EAGAIN || error == Errno.EWOULDBLOCK)) {
+                s.wouldBlock(false);
+            }
             throw new IOException(Native.getLastErrorString());
         }
+        if (null != s) {
+            s.received(requested, n);
+        }
         return remote;
     }
 
     @Override
     public int send(ByteBuffer src, SocketAddress target) throws IOException {
-        UnixSocketAddress remote = null;
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        Object event = SocketEvents.begin(SocketEvents.SEND);
+        if (null == s && null == c && null == event) {
+            return sendImpl(src, target);
+        }
+        int position = src.position();
+        int n = 0;
+        try {
+            n = sendImpl(src, target);
+            completed(s, c, true, src, position, n);
+        } finally {
+            SocketEvents.commit(SocketEvents.SEND, event, this,
+                    target instanceof UnixSocketAddress ? (UnixSocketAddress) target : null, n);
+        }
+        return n;
+    }
+
+    private int sendImpl(ByteBuffer src, SocketAddress target) throws IOException {
+        int n;
         if (null == target) {
-            if (isConnected()) {
-                remote = remoteAddress;
-            } else {
+            if (!isConnected()) {
                 throw new IllegalArgumentException("Destination address cannot be null on unconnected datagram sockets");
             }
+            n = Native.send(getFD(), src);
         } else {
             if (!(target instanceof UnixSocketAddress)) {
                 throw new UnsupportedAddressTypeException();
             }
-            remote = (UnixSocketAddress)target;
+            if (isConnected() && target.equals(remoteAddress)) {
+                // Already connected in the kernel, no need to resolve the path again
+                n = Native.send(getFD(), src);
+            } else {
+                SockAddrUnix sa = ((UnixSocketAddress) target).getStruct();
+                n = Native.sendto(getFD(), src, sa, sa.length());
+            }
         }
-        SockAddrUnix sa = (null == remote) ? null : remote.getStruct();
-        int addrlen = (null == sa) ? 0 : sa.length();
-        int n = Native.sendto(getFD(), src, sa, addrlen);
         if (n < 0) {
             throw new IOException(Native.getLastErrorString());
         }
@@ -179,6 +274,230 @@ public class UnixDatagramChannel extends AbstractNativeDatagramChannel {
         return n;
     }
 
+    /**
+     * Receives a datagram via this channel, together with the time at which
+     * the kernel queued it. Requires {@link UnixSocketOptions#SO_TIMESTAMPNS}
+     * to be enabled, otherwise the timestamp is marked invalid.
+     *
+     * @param dst The buffer into which the datagram is to be transferred
+     * @param timestamp Receives the kernel timestamp of the datagram
+     * @return The datagram's source address, or null if the channel is in
+     *         non-blocking mode and no datagram was available
+     * @throws UnsupportedOperationException if not supported on this platform
+     * @throws IOException If an I/O error occurs
+     */
+    public UnixSocketAddress receive(ByteBuffer dst, KernelTimestamp timestamp) throws IOException {
+        UnixSocketAddress remote = new UnixSocketAddress();
+        int n = MessageHeader.recvmsg(getFD(), dst, remote.getStruct(), timestamp, 0);
+        if (n < 0) {
+            Common.dontWaitResult(n);
+            return null;
+        }
+        return remote;
+    }
+
+    /**
+     * Receives a datagram via this channel without blocking, regardless of the
+     * channel's blocking mode.
+     * <p>
+     * Unlike toggling {@link #configureBlocking}, this passes MSG_DONTWAIT to
+     * recvfrom(2) and leaves the file status flags of the socket untouched.
+     *
+     * @param dst The buffer into which the datagram is to be transferred
+     * @return The datagram's source address, or null if no datagram was available
+     * @throws IOException If an I/O error occurs
+     */
+    public UnixSocketAddress tryReceive(ByteBuffer dst) throws IOException {
+        UnixSocketAddress remote = new UnixSocketAddress();
+        ChannelStats s = stats;
+        int requested = dst.remaining();
+        int n = Native.recvfrom(getFD(), dst, remote.getStruct(), Native.MSG_DONTWAIT | (null == s ? 0 : TRUNC));
+        if (n < 0) {
+            Common.dontWaitResult(n);
+            if (null != s) {
+                s.wouldBlock(false);
+            }
+            return null;
+        }
+        if (null != s) {
+            s.received(requested, n);
+        }
+        TrafficCapture c = capture;
+        if (null != c) {
+            int received = Math.min(n, requested);
+            c.record(TrafficCapture.Direction.IN, getFD(), dst, dst.position() - received, received);
+        }
+        return remote;
+    }
+
+    /**
+     * Reads a datagram from this connected channel without blocking,
+     * regardless of the channel's blocking mode.
+     *
+     * @param dst The buffer into which the datagram is to be transferred
+     * @return The number of bytes read, 0 if no datagram was available
+     * @throws IOException If an I/O error occurs
+     * @see #tryReceive
+     */
+    public int tryRead(ByteBuffer dst) throws IOException {
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        if (null == s && null == c) {
+            return tryReadImpl(dst);
+        }
+        int position = dst.position();
+        int n = tryReadImpl(dst);
+        completed(s, c, false, dst, position, n);
+        return n;
+    }
+
+    private int tryReadImpl(ByteBuffer dst) throws IOException {
+        if (state == State.CONNECTED) {
+            return Common.dontWaitResult(Native.recv(getFD(), dst, Native.MSG_DONTWAIT));
+        } else if (state == State.IDLE) {
+            return 0;
+        } else {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Writes a datagram to this connected channel without blocking,
+     * regardless of the channel's blocking mode.
+     *
+     * @param src The buffer containing the datagram
+     * @return The number of bytes written, 0 if the socket buffer is full
+     * @throws IOException If an I/O error occurs
+     */
+    public int tryWrite(ByteBuffer src) throws IOException {
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        if (null == s && null == c) {
+            return tryWriteImpl(src);
+        }
+        int position = src.position();
+        int n = tryWriteImpl(src);
+        completed(s, c, true, src, position, n);
+        return n;
+    }
+
+    private int tryWriteImpl(ByteBuffer src) throws IOException {
+        if (state == State.CONNECTED) {
+            return Common.dontWaitResult(Native.send(getFD(), src, Native.MSG_DONTWAIT));
+        } else if (state == State.IDLE) {
+            return 0;
+        } else {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Enables busy polling for blocking reads and receives of this channel.
+     * Non-blocking mode is not affected.
+     *
+     * @param policy The busy-poll policy, or null to disable busy polling
+     */
+    public void setBusyPoll(BusyPoll policy) {
+        this.busyPoll = policy;
+    }
+
+    /**
+     * Retrieves the busy-poll policy of this channel.
+     *
+     * @return The policy, or null if busy polling is disabled
+     */
+    public BusyPoll getBusyPoll() {
+        return busyPoll;
+    }
+
+    /**
+     * Enables counting the I/O operations of this channel.
+     *
+     * @param stats The counters to update, or null to stop counting
+     */
+    public void setStats(ChannelStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Retrieves the counters of this channel.
+     *
+     * @return The counters, or null if counting is disabled
+     */
+    public ChannelStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Attaches a traffic capture to this channel.
+     *
+     * @param capture The capture to record the traffic into, or null to stop
+     */
+    public void setCapture(TrafficCapture capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * Retrieves the traffic capture attached to this channel.
+     *
+     * @return The capture, or null if none is attached
+     */
+    public TrafficCapture getCapture() {
+        return capture;
+    }
+
+    /**
+     * Accounts for a completed read or write in the counters and capture
+     * enabled for this channel.
+     */
+    private void completed(ChannelStats s, TrafficCapture c, boolean write, ByteBuffer buffer, int position, int n) {
+        if (null != s) {
+            int requested = buffer.limit() - position;
+            if (write) {
+                s.write(requested, n);
+            } else {
+                s.read(requested, n);
+            }
+        }
+        if (null != c && n > 0) {
+            c.record(write ? TrafficCapture.Direction.OUT : TrafficCapture.Direction.IN, getFD(), buffer, position, n);
+        }
+    }
+
+    /**
+     * Attaches a classic BPF program to this channel's socket, replacing any
+     * previously attached one. Incoming messages rejected by the program are
+     * dropped by the kernel and never reach this channel.
+     *
+     * @param filter The filter program
+     * @throws UnsupportedOperationException if socket filters are not supported
+     * @throws IOException if the filter could not be attached
+     */
+    public void attachFilter(SocketFilter filter) throws IOException {
+        Common.attachFilter(getFD(), filter);
+    }
+
+    /**
+     * Removes the filter attached to this channel's socket.
+     *
+     * @throws UnsupportedOperationException if socket filters are not supported
+     * @throws IOException if no filter is attached or the filter is locked
+     */
+    public void detachFilter() throws IOException {
+        Common.detachFilter(getFD());
+    }
+
+    /**
+     * Locks the filter attached to this channel's socket, so that it can
+     * neither be replaced nor removed anymore.
+     *
+     * @throws UnsupportedOperationException if filter locking is not supported
+     * @throws IOException if the filter could not be locked
+     */
+    public void lockFilter() throws IOException {
+        Common.lockFilter(getFD());
+    }
+
     @Override
     public DatagramChannel connect(SocketAddress remote) throws IOException {
         if (remote instanceof UnixSocketAddress) {
@@ -200,7 +519,25 @@ public class UnixDatagramChannel extends AbstractNativeDatagramChannel {
     @Override
     public long write(ByteBuffer[] srcs, int offset, int length)
         throws IOException {
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        if (null == s && null == c) {
+            return writeImpl(srcs, offset, length);
+        }
+        long requested = UnixSocketChannel.remaining(srcs, offset, length);
+        int[] positions = null == c ? null : TrafficCapture.positions(srcs, offset, length);
+        long n = writeImpl(srcs, offset, length);
+        if (null != s) {
+            s.write(requested, n);
+        }
+        if (null != c && n > 0) {
+            c.record(TrafficCapture.Direction.OUT, getFD(), srcs, offset, positions, n);
+        }
+        return n;
+    }
 
+    private long writeImpl(ByteBuffer[] srcs, int offset, int length)
+        throws IOException {
         if (state == State.CONNECTED) {
             return super.write(srcs, offset, length);
         } else if (state == State.IDLE) {
@@ -212,7 +549,26 @@ public class UnixDatagramChannel extends AbstractNativeDatagramChannel {
 
     @Override
     public int read(ByteBuffer dst) throws IOException {
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        if (null == s && null == c) {
+            return readImpl(dst);
+        }
+        int position = dst.position();
+        int n = readImpl(dst);
+        completed(s, c, false, dst, position, n);
+        return n;
+    }
+
+    private int readImpl(ByteBuffer dst) throws IOException {
         if (state == State.CONNECTED) {
+            BusyPoll policy = busyPoll;
+            if (null != policy && isBlocking()) {
+                int n = policy.spin(getFD(), dst, null);
+                if (n != BusyPoll.EXHAUSTED) {
+                    return n;
+                }
+            }
             return super.read(dst);
         } else if (state == State.IDLE) {
             return 0;
@@ -223,6 +579,18 @@ public class UnixDatagramChannel extends AbstractNativeDatagramChannel {
 
     @Override
     public int write(ByteBuffer src) throws IOException {
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        if (null == s && null == c) {
+            return writeImpl(src);
+        }
+        int position = src.position();
+        int n = writeImpl(src);
+        completed(s, c, true, src, position, n);
+        return n;
+    }
+
+    private int writeImpl(ByteBuffer src) throws IOException {
         if (state == State.CONNECTED) {
             return super.write(src);
         } else if (state == State.IDLE) {
@@ -253,6 +621,9 @@ public class UnixDatagramChannel extends AbstractNativeDatagramChannel {
             set.add(UnixSocketOptions.SO_RCVBUF);
             set.add(UnixSocketOptions.SO_RCVTIMEO);
             set.add(UnixSocketOptions.SO_PEERCRED);
+            Common.addDefined(set, UnixSocketOptions.SO_PEEK_OFF,
+                    UnixSocketOptions.SO_SNDBUFFORCE, UnixSocketOptions.SO_RCVBUFFORCE,
+                    UnixSocketOptions.SO_TIMESTAMPNS);
             return Collections.unmodifiableSet(set);
         }
     }
@@ -264,7 +635,7 @@ public class UnixDatagramChannel extends AbstractNativeDatagramChannel {
 
     @Override
     public <T> T getOption(SocketOption<T> name) throws IOException {
-        if (!supportedOptions().contains(name)) {
+        if (!Common.isSupported(supportedOptions(), name)) {
             throw new UnsupportedOperationException("'" + name + "' not supported");
         }
         return Common.getSocketOption(getFD(), name);
@@ -276,7 +647,7 @@ public class UnixDatagramChannel extends AbstractNativeDatagramChannel {
         if (name == null) {
             throw new IllegalArgumentException("name may not be null");
         }
-        if (!supportedOptions().contains(name)) {
+        if (!Common.isSupported(supportedOptions(), name)) {
             throw new UnsupportedOperationException("'" + name + "' not supported");
         }
         Common.setSocketOption(getFD(), name, value);
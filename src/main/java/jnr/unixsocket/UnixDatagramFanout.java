@@ -0,0 +1,208 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jnr.constants.platform.Errno;
+import jnr.enxio.channels.NativeException;
+
+/**
+ * Sends datagrams to many AF_UNIX destinations through a bounded pool of
+ * datagram sockets, each connected to exactly one destination.
+ * <p>
+ * Since every pooled socket is connected at the kernel level, sending to a
+ * known destination neither encodes its address nor resolves its path again.
+ * When the pool is full, the least recently used socket is closed.
+ * If a destination was removed or restarted (ENOENT, ECONNREFUSED), the
+ * pooled socket is reconnected once before giving up.
+ * <p>
+ * Datagrams are sent without blocking: a destination whose receive queue is
+ * full does not hold up the others, the datagram is dropped for it and
+ * counted in {@link #getDropped()}.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class UnixDatagramFanout implements Closeable {
+    private final LruChannels channels;
+    private boolean closed = false;
+    private long dropped = 0;
+
+    /**
+     * Creates a new fan-out sender.
+     *
+     * @param maxChannels The maximum number of connected sockets to keep open.
+     */
+    public UnixDatagramFanout(int maxChannels) {
+        if (maxChannels < 1) {
+            throw new IllegalArgumentException("maxChannels must be positive");
+        }
+        channels = new LruChannels(maxChannels);
+    }
+
+    /**
+     * Sends a datagram to a single destination.
+     *
+     * @param src The buffer containing the datagram
+     * @param target The destination address
+     * @return The number of bytes sent, or 0 if the destination's receive
+     *         queue is full
+     * @throws IOException if the datagram could not be sent
+     */
+    public synchronized int send(ByteBuffer src, UnixSocketAddress target) throws IOException {
+        if (closed) {
+            throw new IOException("fan-out sender is closed");
+        }
+        int n = Native.send(channel(target).getFD(), src, Native.MSG_DONTWAIT);
+        if (n < 0 && isStale(Native.getLastError())) {
+            // The destination went away or was restarted, connect to its current socket
+            closeQuietly(channels.remove(target));
+            n = Native.send(channel(target).getFD(), src, Native.MSG_DONTWAIT);
+        }
+        if (n < 0 && isFull(Native.getLastError())) {
+            dropped++;
+        }
+        return Common.dontWaitResult(n);
+    }
+
+    /**
+     * Sends the same datagram to every destination.
+     * <p>
+     * Destinations that do not exist or do not accept datagrams, even after a
+     * reconnect, are skipped, as are destinations whose receive queue is
+     * full. On return, the source buffer has been consumed.
+     *
+     * @param src The buffer containing the datagram
+     * @param targets The destination addresses
+     * @return The number of destinations the datagram was delivered to
+     * @throws IOException if sending failed for any other reason
+     */
+    public synchronized int send(ByteBuffer src, Iterable<UnixSocketAddress> targets) throws IOException {
+        int delivered = 0;
+        for (UnixSocketAddress target : targets) {
+            try {
+                long full = dropped;
+                send(src.duplicate(), target);
+                if (dropped == full) {
+                    delivered++;
+                }
+            } catch (NativeException e) {
+                if (!isStale(e.getErrno())) {
+                    throw e;
+                }
+            }
+        }
+        src.position(src.limit());
+        return delivered;
+    }
+
+    /**
+     * Retrieves the number of currently pooled sockets.
+     *
+     * @return The number of connected sockets
+     */
+    public synchronized int size() {
+        return channels.size();
+    }
+
+    /**
+     * Retrieves the number of datagrams dropped because the receive queue
+     * of their destination was full.
+     *
+     * @return The number of dropped datagrams
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Closes all pooled sockets.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        Iterator<UnixDatagramChannel> it = channels.values().iterator();
+        while (it.hasNext()) {
+            closeQuietly(it.next());
+            it.remove();
+        }
+    }
+
+    private UnixDatagramChannel channel(UnixSocketAddress target) throws IOException {
+        UnixDatagramChannel ch = channels.get(target);
+        if (null == ch) {
+            ch = UnixDatagramChannel.open();
+            try {
+                ch.connect(target);
+            } catch (IOException e) {
+                closeQuietly(ch);
+                throw e;
+            }
+            channels.put(target, ch);
+        }
+        return ch;
+    }
+
+    private static boolean isStale(Errno error) {
+        return error == Errno.ECONNREFUSED || error == Errno.ENOENT;
+    }
+
+    private static boolean isFull(Errno error) {
+        return error == Errno.EAGAIN || error == Errno.EWOULDBLOCK;
+    }
+
+    private static void closeQuietly(UnixDatagramChannel ch) {
+        if (null != ch) {
+            try {
+                ch.close();
+            } catch (IOException e) {
+                ignore();
+            }
+        }
+    }
+
+    private static void ignore() {
+    }
+
+    /**
+     * The pooled sockets in least recently used order, closing the eldest
+     * one when the pool is full.
+     */
+    private static final class LruChannels extends LinkedHashMap<UnixSocketAddress, UnixDatagramChannel> {
+        private static final long serialVersionUID = 1L;
+        private final int maxChannels;
+
+        LruChannels(int maxChannels) {
+            super(16, 0.75f, true);
+            this.maxChannels = maxChannels;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UnixSocketAddress, UnixDatagramChannel> eldest) {
+            if (size() > maxChannels) {
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    }
+}
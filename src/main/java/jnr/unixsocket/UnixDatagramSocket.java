@@ -22,12 +22,16 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.UnsupportedAddressTypeException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import jnr.constants.platform.Errno;
+
 /**
  * A SOCK_DGRAM variant of an AF_UNIX socket.
  * This specializaton of DatagramSocket delegates
@@ -281,29 +285,92 @@ public class UnixDatagramSocket extends DatagramSocket {
     }
 
     /**
-     * Sends a datagram packet from this socket (<b>NOT implemented</b>).
-     * Unfortunately, {@link java.net.DatagramPacket} is final and can not deal
-     * with AF_UNIX addresses. Therefore, this functionality was omitted.
-     * @see java.net.DatagramPacket
+     * Sends a datagram packet from this socket to the connected peer.
+     * The packet's data is passed to the kernel straight from its backing
+     * array. Since {@link java.net.DatagramPacket} can only carry an
+     * {@link java.net.InetSocketAddress}, the packet must not have an address;
+     * use {@link #send(DatagramPacket, UnixSocketAddress)} to address an
+     * unconnected socket.
+     * @param p The packet to be sent.
+     * @throws UnsupportedAddressTypeException if the packet carries an address.
+     * @throws IOException if an I/O error occurs.
      * @see java.net.DatagramSocket#send
-     * @throws UnsupportedOperationException always.
      */
     @Override
     public void send(DatagramPacket p) throws IOException {
-        throw new UnsupportedOperationException("sending DatagramPackets is not supported");
+        send(p, null);
+    }
+
+    /**
+     * Sends a datagram packet from this socket to the given AF_UNIX address.
+     * The packet's data is passed to the kernel straight from its backing array.
+     * @param p The packet to be sent.
+     * @param target The destination, or {@code null} for the connected peer.
+     * @throws UnsupportedAddressTypeException if the packet carries an address.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void send(DatagramPacket p, UnixSocketAddress target) throws IOException {
+        if (isClosed()) {
+            throw new SocketException("Socket is closed");
+        }
+        synchronized (p) {
+            if (null != p.getAddress()) {
+                throw new UnsupportedAddressTypeException();
+            }
+            chan.send(ByteBuffer.wrap(p.getData(), p.getOffset(), p.getLength()), target);
+        }
     }
 
     /**
-     * Receives a datagram packet from this socket (<b>NOT implemented</b>).
-     * Unfortunately, {@link java.net.DatagramPacket} is final and can not deal
-     * with AF_UNIX addresses. Therefore, this functionality was omitted.
-     * @see java.net.DatagramPacket
+     * Receives a datagram packet from this socket.
+     * The datagram is received straight into the packet's backing array,
+     * starting at its offset and bounded by its length; a longer datagram
+     * is truncated. The packet's length is then set to the length of the
+     * received datagram, so reset it with {@link DatagramPacket#setLength}
+     * before reusing the packet.
+     * The packet's address is left untouched, since {@link java.net.DatagramPacket}
+     * can not carry AF_UNIX addresses; use {@link #receiveFrom} to obtain the
+     * source address.
+     * @param p The packet into which the datagram is received.
+     * @throws SocketTimeoutException if the receive timeout expired.
+     * @throws IOException if an I/O error occurs.
      * @see java.net.DatagramSocket#receive
-     * @throws UnsupportedOperationException always.
      */
     @Override
     public synchronized void receive(DatagramPacket p) throws IOException {
-        throw new UnsupportedOperationException("receiving DatagramPackets is not supported");
+        receiveFrom(p);
+    }
+
+    /**
+     * Receives a datagram packet from this socket and returns its source address.
+     * The datagram is received straight into the packet's backing array,
+     * starting at its offset and bounded by its length; a longer datagram
+     * is truncated. The packet's length is then set to the length of the
+     * received datagram, so reset it with {@link DatagramPacket#setLength}
+     * before reusing the packet.
+     * @param p The packet into which the datagram is received.
+     * @return The {@link UnixSocketAddress} of the sender.
+     * @throws SocketTimeoutException if the receive timeout expired.
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized UnixSocketAddress receiveFrom(DatagramPacket p) throws IOException {
+        if (isClosed()) {
+            throw new SocketException("Socket is closed");
+        }
+        synchronized (p) {
+            UnixSocketAddress remote = new UnixSocketAddress();
+            ByteBuffer dst = ByteBuffer.wrap(p.getData(), p.getOffset(), p.getLength());
+            int n = Native.recvfrom(chan.getFD(), dst, remote.getStruct());
+            if (n < 0) {
+                Errno error = Native.getLastError();
+                if (error == Errno.EAGAIN || error == Errno.EWOULDBLOCK) {
+                    throw new SocketTimeoutException("Receive timed out");
+                }
+                throw new IOException(Native.getLastErrorString());
+            }
+            p.setLength(n);
+            return remote;
+        }
     }
 
     private void ignore() {
@@ -0,0 +1,750 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jnr.enxio.channels.NativeSelectorProvider;
+import jnr.ffi.Platform;
+
+/**
+ * A group of event loops serving UNIX domain sockets.
+ * <p>
+ * Each loop runs on its own thread and owns a selector and a task queue.
+ * A server channel is served by one loop, which accepts connections and
+ * hands them to the loops of the group in turn. Handlers are invoked on the
+ * thread of the loop that owns the channel, and must not block; channels are
+ * switched to non-blocking mode when they are added. To answer without
+ * blocking, handlers write with {@link #write}, which queues what the socket
+ * does not take at once and sends it when the channel becomes writable.
+ * <p>
+ * To keep one busy channel from starving the others of its loop, at most
+ * {@link #getMaxReadsPerWakeup()} reads (or accepts) are made on a channel
+ * per wakeup; the remaining data is read after the other ready channels had
+ * their turn.
+ */
+public final class UnixEventLoopGroup implements Executor, Closeable {
+    /**
+     * Callbacks for a stream connection.
+     */
+    public interface StreamHandler {
+        /**
+         * Invoked when the channel has been added to a loop.
+         *
+         * @param channel The channel
+         * @throws IOException to close the channel
+         */
+        void opened(UnixSocketChannel channel) throws IOException;
+
+        /**
+         * Invoked with data read from the channel. The buffer is reused
+         * after this method returns.
+         *
+         * @param channel The channel
+         * @param data The data, ready to be read
+         * @throws IOException to close the channel
+         */
+        void received(UnixSocketChannel channel, ByteBuffer data) throws IOException;
+
+        /**
+         * Invoked once the channel has been closed, either at the end of
+         * stream, after an error, or on shutdown.
+         *
+         * @param channel The channel
+         */
+        void closed(UnixSocketChannel channel);
+    }
+
+    /**
+     * Callback for datagrams.
+     */
+    public interface DatagramHandler {
+        /**
+         * Invoked with a datagram received on the channel. The buffer is
+         * reused after this method returns.
+         *
+         * @param channel The channel
+         * @param sender The sender's address
+         * @param data The datagram, ready to be read
+         * @throws IOException to close the channel
+         */
+        void received(UnixDatagramChannel channel, UnixSocketAddress sender, ByteBuffer data) throws IOException;
+    }
+
+    private static final int DEFAULT_MAX_READS = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Loop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicBoolean shutdown = new AtomicBoolean();
+    private volatile int maxReadsPerWakeup = DEFAULT_MAX_READS;
+
+    /**
+     * Creates a group of loops running on daemon threads.
+     *
+     * @param loops The number of loops
+     * @throws IOException if a selector could not be opened
+     */
+    public UnixEventLoopGroup(int loops) throws IOException {
+        this(loops, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "unix-event-loop-" + count.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Creates a group of loops.
+     *
+     * @param loops The number of loops
+     * @param threadFactory Creates the loop threads, e.g. an
+     *        {@link AffinityThreadFactory}
+     * @throws IOException if a selector could not be opened
+     */
+    public UnixEventLoopGroup(int loops, ThreadFactory threadFactory) throws IOException {
+        if (loops < 1) {
+            throw new IllegalArgumentException("at least one loop is required");
+        }
+        this.loops = new Loop[loops];
+        try {
+            for (int i = 0; i < loops; i++) {
+                this.loops[i] = new Loop(openSelector());
+            }
+        } catch (IOException e) {
+            for (Loop loop : this.loops) {
+                if (null != loop) {
+                    loop.selector.close();
+                }
+            }
+            throw e;
+        }
+        for (Loop loop : this.loops) {
+            loop.thread = threadFactory.newThread(loop);
+            loop.thread.start();
+        }
+    }
+
+    private static Selector openSelector() throws IOException {
+        if (Platform.getNativePlatform().getOS() == Platform.OS.LINUX) {
+            return EPollSelectorProvider.getInstance().openSelector();
+        }
+        return NativeSelectorProvider.getInstance().openSelector();
+    }
+
+    /**
+     * Sets how many reads or accepts are made on one channel per wakeup.
+     *
+     * @param max The maximum, at least 1
+     */
+    public void setMaxReadsPerWakeup(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("max must be at least 1");
+        }
+        maxReadsPerWakeup = max;
+    }
+
+    public int getMaxReadsPerWakeup() {
+        return maxReadsPerWakeup;
+    }
+
+    private Loop next() {
+        return loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    }
+
+    /**
+     * Runs a task on one of the loops.
+     *
+     * @throws RejectedExecutionException if the group has been shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        next().execute(task);
+    }
+
+    /**
+     * Accepts connections on a bound server channel, and serves them with a
+     * handler. The server channel is closed on shutdown.
+     *
+     * @param server The server channel
+     * @param handler The handler for accepted connections
+     * @throws RejectedExecutionException if the group has been shut down
+     */
+    public void serve(final UnixServerSocketChannel server, final StreamHandler handler) {
+        final Loop loop = next();
+        loop.execute(new ChannelTask(server) {
+            @Override
+            public void run() {
+                try {
+                    server.configureBlocking(false);
+                    server.register(loop.selector, SelectionKey.OP_ACCEPT, new Acceptor(server, handler));
+                } catch (IOException e) {
+                    loop.closeQuietly(server);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes data to a channel served by this group, without blocking.
+     * What the socket does not accept at once is copied to a queue of the
+     * channel, which is written in order once the channel becomes writable;
+     * the queue is not bounded. Called on the channel's loop, typically by
+     * its handler, the data is written right away; from other threads, it is
+     * copied and written on the loop.
+     *
+     * @param channel A channel that has been opened by this group
+     * @param data The data to write, which is consumed entirely
+     * @throws IllegalArgumentException if the channel is not served by this group
+     * @throws ClosedChannelException if the channel has been closed
+     * @throws IOException if writing failed
+     */
+    public void write(UnixSocketChannel channel, ByteBuffer data) throws IOException {
+        for (Loop loop : loops) {
+            SelectionKey key = channel.keyFor(loop.selector);
+            if (null != key) {
+                loop.write(key, data);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("channel is not served by this group");
+    }
+
+    /**
+     * Adds a connected channel to one of the loops.
+     *
+     * @param channel The channel
+     * @param handler The handler for the channel
+     * @throws RejectedExecutionException if the group has been shut down
+     */
+    public void register(UnixSocketChannel channel, StreamHandler handler) {
+        next().add(channel, handler);
+    }
+
+    /**
+     * Adds a datagram channel to one of the loops.
+     *
+     * @param channel The channel
+     * @param handler The handler for received datagrams
+     * @throws RejectedExecutionException if the group has been shut down
+     */
+    public void register(final UnixDatagramChannel channel, final DatagramHandler handler) {
+        final Loop loop = next();
+        loop.execute(new ChannelTask(channel) {
+            @Override
+            public void run() {
+                try {
+                    channel.configureBlocking(false);
+                    channel.register(loop.selector, SelectionKey.OP_READ, new DatagramReader(channel, handler));
+                } catch (IOException e) {
+                    loop.closeQuietly(channel);
+                }
+            }
+        });
+    }
+
+    /**
+     * Initiates a graceful shutdown: server channels are closed and no new
+     * tasks or channels are accepted, while the open connections are served
+     * until they are closed. Each loop terminates once all its channels have
+     * been closed.
+     */
+    public void shutdown() {
+        if (shutdown.compareAndSet(false, true)) {
+            for (Loop loop : loops) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Shuts down and closes all channels at once.
+     */
+    public void shutdownNow() {
+        for (Loop loop : loops) {
+            loop.abort = true;
+        }
+        shutdown();
+    }
+
+    public boolean isShutdown() {
+        return shutdown.get();
+    }
+
+    /**
+     * Waits for all loops to terminate after a shutdown.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return true if the loops terminated, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Loop loop : loops) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (millis <= 0) {
+                return !isAlive();
+            }
+            loop.thread.join(millis);
+        }
+        return !isAlive();
+    }
+
+    private boolean isAlive() {
+        for (Loop loop : loops) {
+            if (loop.thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closes all channels and waits for the loops to terminate.
+     */
+    @Override
+    public void close() throws IOException {
+        shutdownNow();
+        try {
+            awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A task adding a channel to a loop, which closes the channel if the
+     * loop terminates before the task could run.
+     */
+    private abstract static class ChannelTask implements Runnable {
+        private final SelectableChannel channel;
+
+        ChannelTask(SelectableChannel channel) {
+            this.channel = channel;
+        }
+
+        void abort() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing left to do with it
+            }
+        }
+    }
+
+    /**
+     * The state attached to the selection keys of a loop.
+     */
+    private abstract static class Attachment {
+        private boolean notified;
+
+        abstract void ready(Loop loop, SelectionKey key) throws IOException;
+
+        abstract void closed(Loop loop, SelectionKey key);
+
+        /**
+         * Invokes {@link #closed} once, whether the loop or the handler
+         * closed the channel.
+         */
+        final void notifyClosed(Loop loop, SelectionKey key) {
+            if (!notified) {
+                notified = true;
+                closed(loop, key);
+            }
+        }
+    }
+
+    private final class Acceptor extends Attachment {
+        private final UnixServerSocketChannel server;
+        private final StreamHandler handler;
+
+        Acceptor(UnixServerSocketChannel server, StreamHandler handler) {
+            this.server = server;
+            this.handler = handler;
+        }
+
+        @Override
+        void ready(Loop loop, SelectionKey key) throws IOException {
+            for (int i = maxReadsPerWakeup; i > 0; i--) {
+                UnixSocketChannel channel = server.accept();
+                if (null == channel) {
+                    break;
+                }
+                try {
+                    next().add(channel, handler);
+                } catch (RejectedExecutionException e) {
+                    loop.closeQuietly(channel);
+                }
+            }
+        }
+
+        @Override
+        void closed(Loop loop, SelectionKey key) {
+        }
+    }
+
+    private final class Stream extends Attachment {
+        private final UnixSocketChannel channel;
+        private final StreamHandler handler;
+        private final Queue<ByteBuffer> pending = new ArrayDeque<ByteBuffer>();
+
+        Stream(UnixSocketChannel channel, StreamHandler handler) {
+            this.channel = channel;
+            this.handler = handler;
+        }
+
+        void write(SelectionKey key, ByteBuffer data) throws IOException {
+            if (pending.isEmpty()) {
+                channel.write(data);
+                if (!data.hasRemaining()) {
+                    return;
+                }
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+            pending.add(copy(data));
+        }
+
+        private void flush(SelectionKey key) throws IOException {
+            ByteBuffer head;
+            while ((head = pending.peek()) != null) {
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    return;
+                }
+                pending.remove();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        @Override
+        void ready(Loop loop, SelectionKey key) throws IOException {
+            if (key.isWritable()) {
+                flush(key);
+            }
+            if (key.isReadable()) {
+                read(loop, key);
+            }
+        }
+
+        private void read(Loop loop, SelectionKey key) throws IOException {
+            ByteBuffer buffer = loop.buffer;
+            for (int i = maxReadsPerWakeup; i > 0 && channel.isOpen(); i--) {
+                buffer.clear();
+                int n = channel.read(buffer);
+                if (n < 0) {
+                    loop.cancel(key);
+                    return;
+                }
+                if (n == 0) {
+                    return;
+                }
+                buffer.flip();
+                handler.received(channel, buffer);
+                if (n < buffer.capacity()) {
+                    // drained the socket buffer, save the EAGAIN round trip
+                    return;
+                }
+            }
+        }
+
+        @Override
+        void closed(Loop loop, SelectionKey key) {
+            handler.closed(channel);
+        }
+    }
+
+    private final class DatagramReader extends Attachment {
+        private final UnixDatagramChannel channel;
+        private final DatagramHandler handler;
+
+        DatagramReader(UnixDatagramChannel channel, DatagramHandler handler) {
+            this.channel = channel;
+            this.handler = handler;
+        }
+
+        @Override
+        void ready(Loop loop, SelectionKey key) throws IOException {
+            ByteBuffer buffer = loop.buffer;
+            for (int i = maxReadsPerWakeup; i > 0 && channel.isOpen(); i--) {
+                buffer.clear();
+                UnixSocketAddress sender = channel.tryReceive(buffer);
+                if (null == sender) {
+                    return;
+                }
+                buffer.flip();
+                handler.received(channel, sender, buffer);
+            }
+        }
+
+        @Override
+        void closed(Loop loop, SelectionKey key) {
+        }
+    }
+
+    private static ByteBuffer copy(ByteBuffer data) {
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data);
+        copy.flip();
+        return copy;
+    }
+
+    private final class Loop implements Runnable, Executor {
+        final Selector selector;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicBoolean wakeupPending = new AtomicBoolean();
+        volatile boolean abort;
+        private volatile boolean terminated;
+        Thread thread;
+        private boolean drained;
+
+        Loop(Selector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (shutdown.get()) {
+                throw new RejectedExecutionException("event loop group has been shut down");
+            }
+            enqueue(task);
+        }
+
+        /**
+         * Queues a task even after shutdown, as long as the loop runs.
+         */
+        private void enqueue(Runnable task) {
+            tasks.add(task);
+            // once terminated, the loop hands the tasks it still finds to
+            // abortTasks(), so only reject what it has not taken
+            if (terminated && tasks.remove(task)) {
+                throw new RejectedExecutionException("event loop has terminated");
+            }
+            if (Thread.currentThread() != thread && wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        void write(final SelectionKey key, ByteBuffer data) throws IOException {
+            if (Thread.currentThread() == thread) {
+                if (!key.isValid()) {
+                    throw new ClosedChannelException();
+                }
+                ((Stream) key.attachment()).write(key, data);
+                return;
+            }
+            final ByteBuffer copy = copy(data);
+            try {
+                enqueue(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!key.isValid()) {
+                            return;
+                        }
+                        try {
+                            ((Stream) key.attachment()).write(key, copy);
+                        } catch (IOException e) {
+                            cancel(key);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                throw new ClosedChannelException();
+            }
+        }
+
+        void add(final UnixSocketChannel channel, final StreamHandler handler) {
+            execute(new ChannelTask(channel) {
+                @Override
+                void abort() {
+                    super.abort();
+                    handler.closed(channel);
+                }
+
+                @Override
+                public void run() {
+                    SelectionKey key;
+                    try {
+                        channel.configureBlocking(false);
+                        key = channel.register(selector, SelectionKey.OP_READ, new Stream(channel, handler));
+                    } catch (IOException e) {
+                        closeQuietly(channel);
+                        return;
+                    }
+                    try {
+                        handler.opened(channel);
+                    } catch (IOException e) {
+                        cancel(key);
+                    } catch (RuntimeException e) {
+                        cancel(key);
+                        report(e);
+                    }
+                }
+            });
+        }
+
+        void cancel(SelectionKey key) {
+            if (!key.isValid()) {
+                return;
+            }
+            key.cancel();
+            closeQuietly(key.channel());
+            ((Attachment) key.attachment()).notifyClosed(this, key);
+        }
+
+        void closeQuietly(SelectableChannel channel) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing left to do with it
+            }
+        }
+
+        /**
+         * Hands an exception thrown by a task or handler to the thread's
+         * uncaught exception handler, and keeps the loop running.
+         */
+        private void report(RuntimeException e) {
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                run(task);
+            }
+        }
+
+        /**
+         * Handles the tasks left when the loop has terminated: channels that
+         * were about to be added are closed, other tasks still run.
+         */
+        private void abortTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                if (task instanceof ChannelTask) {
+                    ((ChannelTask) task).abort();
+                } else {
+                    run(task);
+                }
+            }
+        }
+
+        private void run(Runnable task) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                report(e);
+            }
+        }
+
+        private void drain() {
+            drained = true;
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid() && (abort || key.attachment() instanceof Acceptor)) {
+                    cancel(key);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    runTasks();
+                    if (shutdown.get()) {
+                        if (!drained || abort) {
+                            drain();
+                        }
+                        selector.selectNow();
+                        // selectNow() swallows the wakeup of a task queued meanwhile
+                        wakeupPending.set(false);
+                        if (!tasks.isEmpty()) {
+                            continue;
+                        }
+                        if (selector.keys().isEmpty()) {
+                            break;
+                        }
+                    }
+                    selector.select();
+                    wakeupPending.set(false);
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        process(key);
+                    }
+                }
+            } catch (IOException e) {
+                // the selector failed, close what is left below
+            } finally {
+                terminated = true;
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid()) {
+                        cancel(key);
+                    }
+                }
+                abortTasks();
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+        private void process(SelectionKey key) {
+            if (!key.isValid()) {
+                return;
+            }
+            Attachment a = (Attachment) key.attachment();
+            try {
+                a.ready(this, key);
+                if (!key.channel().isOpen()) {
+                    // closed by the handler
+                    a.notifyClosed(this, key);
+                }
+            } catch (IOException e) {
+                cancel(key);
+            } catch (RuntimeException e) {
+                cancel(key);
+                report(e);
+            }
+        }
+    }
+}
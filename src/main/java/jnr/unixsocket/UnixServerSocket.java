@@ -50,10 +50,7 @@ public class UnixServerSocket {
         if (null != endpoint && !(endpoint instanceof UnixSocketAddress)) {
             throw new UnsupportedAddressTypeException();
         }
-        localAddress = Common.bind(fd, (UnixSocketAddress)endpoint);
-        if (Native.listen(fd, backlog) < 0) {
-            throw new IOException(Native.getLastErrorString());
-        }
+        localAddress = channel.bind((UnixSocketAddress)endpoint, backlog);
     }
 
 }
@@ -21,7 +21,6 @@ package jnr.unixsocket;
 import jnr.constants.platform.ProtocolFamily;
 import jnr.constants.platform.Sock;
 import jnr.unixsocket.impl.AbstractNativeServerSocketChannel;
-import jnr.ffi.byref.IntByReference;
 
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
@@ -53,18 +52,62 @@ public class UnixServerSocketChannel extends AbstractNativeServerSocketChannel {
         return new UnixServerSocket().channel;
     }
 
+    /**
+     * Opens a server channel backed by the JDK's own AF_UNIX
+     * {@link java.nio.channels.ServerSocketChannel}, available since JDK 16,
+     * which accepts channels as described for {@link UnixSocketChannel#openJdk()}.
+     * It cannot be registered with the selectors of this library, nor be
+     * bound in abstract namespace. To wait for it with a JDK
+     * {@link java.nio.channels.Selector}, register {@link #getJdkChannel()}.
+     *
+     * @return The new channel
+     * @throws UnsupportedOperationException if the JDK has no AF_UNIX support
+     * @throws IOException if the channel could not be opened
+     */
+    public static UnixServerSocketChannel openJdk() throws IOException {
+        return new JdkUnixServerSocketChannel();
+    }
+
+    /**
+     * Retrieves the JDK channel backing a channel opened with {@link #openJdk()}.
+     *
+     * @return The JDK channel, or null if this is a native channel
+     */
+    public java.nio.channels.ServerSocketChannel getJdkChannel() {
+        return null;
+    }
+
+    /**
+     * Binds the socket and starts listening for connections.
+     *
+     * @param local The address to bind to, or null to autobind
+     * @param backlog The maximum number of pending connections
+     * @return The address bound to
+     */
+    UnixSocketAddress bind(UnixSocketAddress local, int backlog) throws IOException {
+        UnixSocketAddress address = Common.bind(getFD(), local);
+        if (Native.listen(getFD(), backlog) < 0) {
+            throw new IOException(Native.getLastErrorString());
+        }
+        return address;
+    }
+
     public UnixSocketChannel accept() throws IOException {
         UnixSocketAddress remote = new UnixSocketAddress();
         SockAddrUnix addr = remote.getStruct();
-        int maxLength = addr.getMaximumLength();
-        IntByReference len = new IntByReference(maxLength);
 
         int clientfd = -1;
+        Object event = SocketEvents.begin(SocketEvents.ACCEPT);
         begin();
         try {
-            clientfd = Native.accept(getFD(), addr, len);
+            clientfd = Native.accept(getFD(), addr);
         } finally {
             end(clientfd >= 0);
+            // a failed blocking accept is recorded too, a non-blocking poll
+            // that found no connection is not
+            if (clientfd >= 0 || isBlocking()) {
+                SocketEvents.commit(SocketEvents.ACCEPT, event, this, null, 0);
+            }
         }
 
         if (clientfd < 0) {
@@ -82,9 +125,6 @@ public class UnixServerSocketChannel extends AbstractNativeServerSocketChannel {
             return null;
         }
 
-        // Handle unnamed sockets and sockets in Linux' abstract namespace
-        addr.updatePath(len.getValue());
-
         // Always force the socket back to blocking mode
         Native.setBlocking(clientfd, true);
 
@@ -108,12 +108,12 @@ public class UnixSocketAddress extends java.net.SocketAddress {
         UnixSocketAddress other = (UnixSocketAddress)_other;
 
         return address.getFamily() == other.address.getFamily() &&
-            path().equals(other.path());
+            address.pathEquals(other.address);
     }
 
     @Override
     public int hashCode() {
-        return address.hashCode();
+        return address.pathHashCode();
     }
 
     // Serializable
@@ -55,6 +55,10 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
     private UnixSocketAddress localAddress = null;
     private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
     private final BindHandler bindHandler;
+    private LoopbackPair.End loopback = null;
+    private volatile BusyPoll busyPoll = null;
+    private volatile ChannelStats stats = null;
+    private volatile TrafficCapture capture = null;
 
     public static final UnixSocketChannel open() throws IOException {
         return new UnixSocketChannel();
@@ -77,14 +81,104 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
         return new UnixSocketChannel();
     }
 
+    /**
+     * Opens a channel backed by the JDK's own AF_UNIX {@link SocketChannel},
+     * available since JDK 16.
+     * <p>
+     * Blocking operations of such a channel park virtual threads instead of
+     * pinning their carriers. The channel has no file descriptor, so it
+     * cannot be registered with the selectors of this library, nor be used
+     * for operations that need one, like credentials, socket filters or
+     * kernel timestamps, and it cannot be bound or connected in abstract
+     * namespace. To wait for it with a JDK {@link java.nio.channels.Selector},
+     * register {@link #getJdkChannel()}.
+     *
+     * @return The new channel
+     * @throws UnsupportedOperationException if the JDK has no AF_UNIX support
+     * @throws IOException if the channel could not be opened
+     */
+    public static final UnixSocketChannel openJdk() throws IOException {
+        return new JdkUnixSocketChannel();
+    }
+
+    /**
+     * Opens a channel connected to an address, backed by the JDK's own
+     * AF_UNIX {@link SocketChannel} as described for {@link #openJdk()}.
+     * The JDK does not support the abstract namespace, so for an abstract
+     * address, the returned channel is a native one as returned by
+     * {@link #open(UnixSocketAddress)}.
+     *
+     * @param remote The address to connect to
+     * @return The connected channel
+     * @throws UnsupportedOperationException if the JDK has no AF_UNIX support
+     * @throws IOException if the channel could not be opened or connected
+     */
+    public static final UnixSocketChannel openJdk(UnixSocketAddress remote) throws IOException {
+        if (JdkUnixSockets.isAbstract(remote)) {
+            return open(remote);
+        }
+        UnixSocketChannel channel = openJdk();
+        try {
+            channel.connect(remote);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Retrieves the JDK channel backing a channel opened with {@link #openJdk()},
+     * e.g. to register it with a JDK {@link java.nio.channels.Selector}.
+     *
+     * @return The JDK channel, or null if this is a native channel
+     */
+    public SocketChannel getJdkChannel() {
+        return null;
+    }
+
     public static final UnixSocketChannel[] pair() throws IOException {
+        return pair(0);
+    }
+
+    /**
+     * Creates a pair of connected channels.
+     *
+     * @param flags Flags or'ed into the socket type, e.g. SOCK_CLOEXEC
+     */
+    static UnixSocketChannel[] pair(int flags) throws IOException {
         int[] sockets = { -1, -1 };
-        Native.socketpair(ProtocolFamily.PF_UNIX, Sock.SOCK_STREAM, 0, sockets);
+        Native.socketpair(ProtocolFamily.PF_UNIX, Sock.SOCK_STREAM.intValue() | flags, 0, sockets);
         return new UnixSocketChannel[] {
                 new UnixSocketChannel(sockets[0], State.CONNECTED, true),
                 new UnixSocketChannel(sockets[1], State.CONNECTED, true) };
     }
 
+    /**
+     * Creates a pair of connected channels which, while both ends are only
+     * used through their Java API, exchange bytes through in-memory rings
+     * instead of the kernel. The rings are guarded by monitors, not
+     * lock-free, and only serve blocking reads and writes: switching
+     * either end to non-blocking mode detaches the pair, so channels
+     * registered with a selector always use the sockets.
+     * <p>
+     * The pair is backed by a regular socketpair. It falls back to the
+     * sockets as soon as the file descriptor of either end is used, e.g.
+     * when it is handed to native code or another process, an option is
+     * read or set, an end is switched to non-blocking mode for use with a
+     * selector, or an end is shut down or closed. Bytes still buffered in
+     * memory are written into the sockets first, so no data is lost or
+     * reordered.
+     *
+     * @return The connected channels
+     * @throws IOException if the socketpair could not be created
+     */
+    public static final UnixSocketChannel[] loopbackPair() throws IOException {
+        UnixSocketChannel[] channels = pair();
+        LoopbackPair.attach(channels);
+        return channels;
+    }
+
     /**
      * Create a UnixSocketChannel to wrap an existing file descriptor
      * (presumably itself a UNIX socket).
@@ -116,6 +210,71 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
         }
     }
 
+    void setLoopback(LoopbackPair.End loopback) {
+        this.loopback = loopback;
+    }
+
+    boolean isLoopbackAttached() {
+        return null != loopback && loopback.isAttached();
+    }
+
+    /**
+     * Retrieves the file descriptor without detaching an in-memory pair.
+     */
+    int nativeFD() {
+        return super.getFD();
+    }
+
+    private void detachLoopback() throws IOException {
+        if (null != loopback) {
+            loopback.detach();
+        }
+    }
+
+    /**
+     * Retrieves the file descriptor of this channel. If this channel is an
+     * end of a {@link #loopbackPair()}, the pair falls back to its sockets.
+     */
+    @Override
+    public int getFD() {
+        try {
+            detachLoopback();
+        } catch (IOException e) {
+            throw new IllegalStateException("could not detach loopback pair", e);
+        }
+        return super.getFD();
+    }
+
+    @Override
+    protected void implConfigureBlocking(boolean block) throws IOException {
+        if (!block) {
+            detachLoopback();
+        }
+        super.implConfigureBlocking(block);
+    }
+
+    @Override
+    protected void implCloseSelectableChannel() throws IOException {
+        try {
+            detachLoopback();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        super.implCloseSelectableChannel();
+    }
+
+    @Override
+    public SocketChannel shutdownInput() throws IOException {
+        detachLoopback();
+        return super.shutdownInput();
+    }
+
+    @Override
+    public SocketChannel shutdownOutput() throws IOException {
+        detachLoopback();
+        return super.shutdownOutput();
+    }
+
     private boolean doConnect(SockAddrUnix remote) throws IOException {
         if (Native.connect(getFD(), remote, remote.length()) != 0) {
             Errno error = Errno.valueOf(LastError.getLastError(jnr.ffi.Runtime
@@ -136,7 +295,14 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
 
     public boolean connect(UnixSocketAddress remote) throws IOException {
         remoteAddress = remote;
-        if (!doConnect(remoteAddress.getStruct())) {
+        Object event = SocketEvents.begin(SocketEvents.CONNECT);
+        boolean connected;
+        try {
+            connected = doConnect(remoteAddress.getStruct());
+        } finally {
+            SocketEvents.commit(SocketEvents.CONNECT, event, this, remote, 0);
+        }
+        if (!connected) {
             stateLock.writeLock().lock();
             state = State.CONNECTING;
             stateLock.writeLock().unlock();
@@ -198,7 +364,7 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
         }
     }
 
-    public final UnixSocketAddress getRemoteSocketAddress() {
+    public UnixSocketAddress getRemoteSocketAddress() {
         if (!isConnected()) {
             return null;
         }
@@ -211,7 +377,7 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
         }
     }
 
-    public final UnixSocketAddress getLocalSocketAddress() {
+    public UnixSocketAddress getLocalSocketAddress() {
         if (localAddress != null) {
             return localAddress;
         } else {
@@ -237,8 +403,38 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
     @Override
     public long write(ByteBuffer[] srcs, int offset, int length)
             throws IOException {
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        Object event = SocketEvents.begin(SocketEvents.WRITE);
+        if (null == s && null == c && null == event) {
+            return writeImpl(srcs, offset, length);
+        }
+        long requested = remaining(srcs, offset, length);
+        int[] positions = null == c ? null : TrafficCapture.positions(srcs, offset, length);
+        long n = 0;
+        try {
+            n = writeImpl(srcs, offset, length);
+            if (null != s) {
+                s.write(requested, n);
+            }
+            if (null != c && n > 0) {
+                c.record(TrafficCapture.Direction.OUT, nativeFD(), srcs, offset, positions, n);
+            }
+        } finally {
+            SocketEvents.commit(SocketEvents.WRITE, event, this, null, n);
+        }
+        return n;
+    }
 
+    long writeImpl(ByteBuffer[] srcs, int offset, int length)
+            throws IOException {
         if (isConnected()) {
+            if (null != loopback) {
+                long n = loopback.write(srcs, offset, length, isBlocking());
+                if (n != LoopbackPair.DETACHED) {
+                    return n;
+                }
+            }
             return super.write(srcs, offset, length);
         } else if (isIdle()) {
             return 0;
@@ -247,9 +443,83 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
         }
     }
 
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length)
+            throws IOException {
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        Object event = SocketEvents.begin(SocketEvents.READ);
+        if (null == s && null == c && null == event) {
+            return readImpl(dsts, offset, length);
+        }
+        long requested = remaining(dsts, offset, length);
+        int[] positions = null == c ? null : TrafficCapture.positions(dsts, offset, length);
+        long n = 0;
+        try {
+            n = readImpl(dsts, offset, length);
+            if (null != s) {
+                s.read(requested, n);
+            }
+            if (null != c && n > 0) {
+                c.record(TrafficCapture.Direction.IN, nativeFD(), dsts, offset, positions, n);
+            }
+        } finally {
+            SocketEvents.commit(SocketEvents.READ, event, this, null, n);
+        }
+        return n;
+    }
+
+    long readImpl(ByteBuffer[] dsts, int offset, int length)
+            throws IOException {
+        if (isConnected()) {
+            if (null != loopback) {
+                long n = loopback.read(dsts, offset, length, isBlocking());
+                if (n != LoopbackPair.DETACHED) {
+                    return n;
+                }
+            }
+            return super.read(dsts, offset, length);
+        } else if (isIdle()) {
+            return 0;
+        } else {
+            throw new ClosedChannelException();
+        }
+    }
+
     @Override
     public int read(ByteBuffer dst) throws IOException {
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        Object event = SocketEvents.begin(SocketEvents.READ);
+        if (null == s && null == c && null == event) {
+            return readImpl(dst);
+        }
+        int position = dst.position();
+        int n = 0;
+        try {
+            n = readImpl(dst);
+            completed(s, c, false, dst, position, n);
+        } finally {
+            SocketEvents.commit(SocketEvents.READ, event, this, null, n);
+        }
+        return n;
+    }
+
+    int readImpl(ByteBuffer dst) throws IOException {
         if (isConnected()) {
+            if (null != loopback) {
+                int n = loopback.read(dst, isBlocking());
+                if (n != LoopbackPair.DETACHED) {
+                    return n;
+                }
+            }
+            BusyPoll policy = busyPoll;
+            if (null != policy && isBlocking()) {
+                int n = policy.spin(getFD(), dst, null);
+                if (n != BusyPoll.EXHAUSTED) {
+                    return n == 0 && dst.hasRemaining() ? -1 : n;
+                }
+            }
             return super.read(dst);
         } else if (isIdle()) {
             return 0;
@@ -260,7 +530,31 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
 
     @Override
     public int write(ByteBuffer src) throws IOException {
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        Object event = SocketEvents.begin(SocketEvents.WRITE);
+        if (null == s && null == c && null == event) {
+            return writeImpl(src);
+        }
+        int position = src.position();
+        int n = 0;
+        try {
+            n = writeImpl(src);
+            completed(s, c, true, src, position, n);
+        } finally {
+            SocketEvents.commit(SocketEvents.WRITE, event, this, null, n);
+        }
+        return n;
+    }
+
+    int writeImpl(ByteBuffer src) throws IOException {
         if (isConnected()) {
+            if (null != loopback) {
+                int n = loopback.write(src, isBlocking());
+                if (n != LoopbackPair.DETACHED) {
+                    return n;
+                }
+            }
             return super.write(src);
         } else if (isIdle()) {
             return 0;
@@ -269,6 +563,183 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
         }
     }
 
+    /**
+     * Reads a sequence of bytes from this channel without blocking, regardless
+     * of the channel's blocking mode.
+     * <p>
+     * Unlike toggling {@link #configureBlocking}, this passes MSG_DONTWAIT to
+     * recv(2) and leaves the file status flags of the socket untouched, so it
+     * does not interfere with blocking operations in other threads.
+     *
+     * @param dst The buffer into which bytes are to be transferred
+     * @return The number of bytes read, 0 if no data was available,
+     *         or -1 if the channel has reached end-of-stream
+     * @throws IOException If an I/O error occurs
+     */
+    public int tryRead(ByteBuffer dst) throws IOException {
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        Object event = SocketEvents.begin(SocketEvents.READ);
+        if (null == s && null == c && null == event) {
+            return tryReadImpl(dst);
+        }
+        int position = dst.position();
+        int n = 0;
+        try {
+            n = tryReadImpl(dst);
+            completed(s, c, false, dst, position, n);
+        } finally {
+            SocketEvents.commit(SocketEvents.READ, event, this, null, n);
+        }
+        return n;
+    }
+
+    int tryReadImpl(ByteBuffer dst) throws IOException {
+        if (isConnected()) {
+            if (null != loopback) {
+                int n = loopback.read(dst, false);
+                if (n != LoopbackPair.DETACHED) {
+                    return n;
+                }
+            }
+            int n = Native.recv(getFD(), dst, Native.MSG_DONTWAIT);
+            if (n == 0 && dst.hasRemaining()) {
+                return -1;
+            }
+            return Common.dontWaitResult(n);
+        } else if (isIdle()) {
+            return 0;
+        } else {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Writes a sequence of bytes to this channel without blocking, regardless
+     * of the channel's blocking mode.
+     * <p>
+     * This passes MSG_DONTWAIT to send(2) and leaves the file status flags of
+     * the socket untouched.
+     *
+     * @param src The buffer from which bytes are to be retrieved
+     * @return The number of bytes written, possibly 0
+     * @throws IOException If an I/O error occurs
+     */
+    public int tryWrite(ByteBuffer src) throws IOException {
+        ChannelStats s = stats;
+        TrafficCapture c = capture;
+        Object event = SocketEvents.begin(SocketEvents.WRITE);
+        if (null == s && null == c && null == event) {
+            return tryWriteImpl(src);
+        }
+        int position = src.position();
+        int n = 0;
+        try {
+            n = tryWriteImpl(src);
+            completed(s, c, true, src, position, n);
+        } finally {
+            SocketEvents.commit(SocketEvents.WRITE, event, this, null, n);
+        }
+        return n;
+    }
+
+    int tryWriteImpl(ByteBuffer src) throws IOException {
+        if (isConnected()) {
+            if (null != loopback) {
+                int n = loopback.write(src, false);
+                if (n != LoopbackPair.DETACHED) {
+                    return n;
+                }
+            }
+            return Common.dontWaitResult(Native.send(getFD(), src, Native.MSG_DONTWAIT));
+        } else if (isIdle()) {
+            return 0;
+        } else {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Enables busy polling for blocking reads of this channel. Reads in
+     * non-blocking mode are not affected.
+     *
+     * @param policy The busy-poll policy, or null to disable busy polling
+     */
+    public void setBusyPoll(BusyPoll policy) {
+        this.busyPoll = policy;
+    }
+
+    /**
+     * Retrieves the busy-poll policy of this channel.
+     *
+     * @return The policy, or null if busy polling is disabled
+     */
+    public BusyPoll getBusyPoll() {
+        return busyPoll;
+    }
+
+    /**
+     * Enables counting the I/O operations of this channel.
+     *
+     * @param stats The counters to update, or null to stop counting
+     */
+    public void setStats(ChannelStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Retrieves the counters of this channel.
+     *
+     * @return The counters, or null if counting is disabled
+     */
+    public ChannelStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Attaches a traffic capture to this channel.
+     *
+     * @param capture The capture to record the traffic into, or null to stop
+     */
+    public void setCapture(TrafficCapture capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * Retrieves the traffic capture attached to this channel.
+     *
+     * @return The capture, or null if none is attached
+     */
+    public TrafficCapture getCapture() {
+        return capture;
+    }
+
+    /**
+     * Accounts for a completed read or write in the counters and capture
+     * enabled for this channel.
+     */
+    private void completed(ChannelStats s, TrafficCapture c, boolean write, ByteBuffer buffer, int position, int n) {
+        if (null != s) {
+            int requested = buffer.limit() - position;
+            if (write) {
+                s.write(requested, n);
+            } else {
+                s.read(requested, n);
+            }
+        }
+        if (null != c && n > 0) {
+            c.record(write ? TrafficCapture.Direction.OUT : TrafficCapture.Direction.IN, nativeFD(), buffer, position, n);
+        }
+    }
+
+    static long remaining(ByteBuffer[] buffers, int offset, int length) {
+        long n = 0;
+        for (int i = offset; i < offset + length; i++) {
+            n += buffers[i].remaining();
+        }
+        return n;
+    }
+
     @Override
     public SocketAddress getRemoteAddress() throws IOException {
         return remoteAddress;
@@ -291,18 +762,20 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
             set.add(UnixSocketOptions.SO_PEERCRED);
             set.add(UnixSocketOptions.SO_KEEPALIVE);
             set.add(UnixSocketOptions.SO_PASSCRED);
+            Common.addDefined(set, UnixSocketOptions.SO_RCVLOWAT, UnixSocketOptions.SO_PEEK_OFF,
+                    UnixSocketOptions.SO_SNDBUFFORCE, UnixSocketOptions.SO_RCVBUFFORCE);
             return Collections.unmodifiableSet(set);
         }
     }
 
     @Override
-    public final Set<SocketOption<?>> supportedOptions() {
+    public Set<SocketOption<?>> supportedOptions() {
         return DefaultOptionsHolder.defaultOptions;
     }
 
     @Override
     public <T> T getOption(SocketOption<T> name) throws IOException {
-        if (!supportedOptions().contains(name)) {
+        if (!Common.isSupported(supportedOptions(), name)) {
             throw new UnsupportedOperationException("'" + name
                     + "' not supported");
         }
@@ -315,7 +788,7 @@ public class UnixSocketChannel extends AbstractNativeSocketChannel {
         if (name == null) {
             throw new IllegalArgumentException("name may not be null");
         }
-        if (!supportedOptions().contains(name)) {
+        if (!Common.isSupported(supportedOptions(), name)) {
             throw new UnsupportedOperationException("'" + name
                     + "' not supported");
         }
@@ -0,0 +1,301 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import jnr.constants.platform.Errno;
+import jnr.constants.platform.Sock;
+import jnr.enxio.channels.NativeException;
+import jnr.enxio.channels.NativeSelectableChannel;
+import jnr.ffi.Platform;
+import jnr.posix.FileStat;
+import jnr.posix.POSIX;
+import jnr.posix.POSIXFactory;
+
+/**
+ * Queries the kernel for the state of UNIX domain sockets via the Linux
+ * sock_diag netlink interface (NETLINK_SOCK_DIAG with UNIX_DIAG), as ss(8)
+ * does.
+ * <p>
+ * An instance keeps its netlink socket and buffers open, so that it can be
+ * polled periodically at little cost. Instances are not safe for concurrent
+ * use by multiple threads.
+ */
+public final class UnixSocketDiag implements Closeable {
+    private static final class POSIXHolder {
+        static final POSIX posix = POSIXFactory.getNativePOSIX();
+    }
+
+    private static final int AF_NETLINK = 16;
+    private static final int AF_UNIX = 1;
+    private static final int SOCK_CLOEXEC = 0x80000;
+    private static final int NETLINK_SOCK_DIAG = 4;
+    private static final int SOCK_DIAG_BY_FAMILY = 20;
+    private static final int NLM_F_REQUEST = 0x1;
+    private static final int NLM_F_DUMP = 0x300;
+    private static final int NLMSG_ERROR = 2;
+    private static final int NLMSG_DONE = 3;
+    private static final int NLMSG_HDRLEN = 16;
+
+    private static final int UDIAG_SHOW_NAME = 0x01;
+    private static final int UDIAG_SHOW_PEER = 0x04;
+    private static final int UDIAG_SHOW_RQLEN = 0x10;
+    private static final int UDIAG_SHOW_MEMINFO = 0x20;
+    private static final int UDIAG_SHOW_UID = 0x40;
+    private static final int SHOW = UDIAG_SHOW_NAME | UDIAG_SHOW_PEER | UDIAG_SHOW_RQLEN
+            | UDIAG_SHOW_MEMINFO | UDIAG_SHOW_UID;
+
+    private static final int UNIX_DIAG_NAME = 0;
+    private static final int UNIX_DIAG_PEER = 2;
+    private static final int UNIX_DIAG_RQLEN = 4;
+    private static final int UNIX_DIAG_MEMINFO = 5;
+    private static final int UNIX_DIAG_UID = 7;
+
+    private static final int REQUEST_SIZE = NLMSG_HDRLEN + 24;
+    private static final int RECEIVE_SIZE = 64 * 1024;
+
+    private final int fd;
+    private final ByteBuffer request = ByteBuffer.allocateDirect(REQUEST_SIZE).order(ByteOrder.nativeOrder());
+    private final ByteBuffer response = ByteBuffer.allocateDirect(RECEIVE_SIZE).order(ByteOrder.nativeOrder());
+    private int seq = 0;
+    private boolean closed = false;
+
+    private UnixSocketDiag(int fd) {
+        this.fd = fd;
+    }
+
+    /**
+     * Checks whether sock_diag is available on this platform.
+     *
+     * @return true if available
+     */
+    public static boolean isSupported() {
+        return Platform.getNativePlatform().getOS() == Platform.OS.LINUX;
+    }
+
+    /**
+     * Opens a netlink socket for queries.
+     *
+     * @return The query interface
+     * @throws UnsupportedOperationException if not on Linux
+     * @throws IOException if the netlink socket could not be opened, e.g.
+     *         when the unix_diag kernel module is not available
+     */
+    public static UnixSocketDiag open() throws IOException {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("sock_diag is only supported on Linux");
+        }
+        int fd = Native.libc().socket(AF_NETLINK, Sock.SOCK_DGRAM.intValue() | SOCK_CLOEXEC, NETLINK_SOCK_DIAG);
+        if (fd < 0) {
+            throw new IOException(Native.getLastErrorString());
+        }
+        return new UnixSocketDiag(fd);
+    }
+
+    /**
+     * Retrieves the inode number of a channel's socket, which identifies
+     * it in query results.
+     *
+     * @param channel The channel
+     * @return The inode number
+     * @throws IOException if fstat(2) failed
+     */
+    public static long inode(NativeSelectableChannel channel) throws IOException {
+        POSIX posix = POSIXHolder.posix;
+        FileStat st = posix.allocateStat();
+        if (posix.fstat(channel.getFD(), st) < 0) {
+            throw new IOException(Native.getLastErrorString());
+        }
+        return st.ino();
+    }
+
+    /**
+     * Retrieves the state of all UNIX domain sockets of the network namespace.
+     *
+     * @return The sockets
+     * @throws IOException if the query failed
+     */
+    public List<UnixSocketInfo> all() throws IOException {
+        List<UnixSocketInfo> result = new ArrayList<UnixSocketInfo>();
+        query(0, NLM_F_REQUEST | NLM_F_DUMP, result);
+        return result;
+    }
+
+    /**
+     * Retrieves the state of a channel's socket.
+     *
+     * @param channel The channel
+     * @return The socket's state
+     * @throws IOException if the query failed
+     */
+    public UnixSocketInfo get(NativeSelectableChannel channel) throws IOException {
+        UnixSocketInfo info = get(inode(channel));
+        if (null == info) {
+            throw new IOException("socket not found");
+        }
+        return info;
+    }
+
+    /**
+     * Retrieves the state of a socket.
+     *
+     * @param inode The inode number of the socket
+     * @return The socket's state, or null if there is no such socket
+     * @throws IOException if the query failed
+     */
+    public UnixSocketInfo get(long inode) throws IOException {
+        List<UnixSocketInfo> result = new ArrayList<UnixSocketInfo>(1);
+        try {
+            query((int) inode, NLM_F_REQUEST, result);
+        } catch (NativeException e) {
+            if (e.getErrno() == Errno.ENOENT) {
+                return null;
+            }
+            throw e;
+        }
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    private void query(int inode, int flags, List<UnixSocketInfo> result) throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        int sequence = ++seq;
+        request.clear();
+        // struct nlmsghdr
+        request.putInt(REQUEST_SIZE).putShort((short) SOCK_DIAG_BY_FAMILY).putShort((short) flags)
+                .putInt(sequence).putInt(0);
+        // struct unix_diag_req: all states, no cookie check
+        request.put((byte) AF_UNIX).put((byte) 0).putShort((short) 0)
+                .putInt(-1).putInt(inode).putInt(SHOW).putInt(-1).putInt(-1);
+        request.flip();
+        int n;
+        do {
+            n = Native.libc().send(fd, request, REQUEST_SIZE, 0);
+        } while (n < 0 && Errno.EINTR.equals(Native.getLastError()));
+        if (n < 0) {
+            throw new IOException("sock_diag request failed: " + Native.getLastErrorString());
+        }
+
+        boolean dump = (flags & NLM_F_DUMP) != 0;
+        while (true) {
+            response.clear();
+            do {
+                n = Native.libc().recv(fd, response, RECEIVE_SIZE, 0);
+            } while (n < 0 && Errno.EINTR.equals(Native.getLastError()));
+            if (n < 0) {
+                throw new IOException("sock_diag receive failed: " + Native.getLastErrorString());
+            }
+            for (int off = 0; off + NLMSG_HDRLEN <= n; ) {
+                int len = response.getInt(off);
+                int type = response.getShort(off + 4) & 0xffff;
+                if (len < NLMSG_HDRLEN || off + len > n) {
+                    break;
+                }
+                if (response.getInt(off + 8) == sequence) {
+                    if (type == NLMSG_DONE) {
+                        return;
+                    } else if (type == NLMSG_ERROR) {
+                        int errno = -response.getInt(off + NLMSG_HDRLEN);
+                        if (errno != 0) {
+                            Errno e = Errno.valueOf(errno);
+                            throw new NativeException("sock_diag query failed: " + Native.libc().strerror(errno), e);
+                        }
+                        return;
+                    } else if (type == SOCK_DIAG_BY_FAMILY) {
+                        result.add(parse(off + NLMSG_HDRLEN, off + len));
+                        if (!dump) {
+                            return;
+                        }
+                    }
+                }
+                off += align(len);
+            }
+        }
+    }
+
+    private static int align(int len) {
+        return (len + 3) & ~3;
+    }
+
+    private UnixSocketInfo parse(int start, int end) {
+        // struct unix_diag_msg
+        int type = response.get(start + 1) & 0xff;
+        int state = response.get(start + 2) & 0xff;
+        long inode = response.getInt(start + 4) & 0xffffffffL;
+        String path = null;
+        long peer = -1;
+        long rqueue = -1;
+        long wqueue = -1;
+        int[] memInfo = null;
+        int uid = -1;
+        // followed by struct rtattr attributes
+        for (int off = start + 16; off + 4 <= end; ) {
+            int len = response.getShort(off) & 0xffff;
+            int attr = response.getShort(off + 2) & 0xffff;
+            if (len < 4 || off + len > end) {
+                break;
+            }
+            int data = off + 4;
+            switch (attr) {
+                case UNIX_DIAG_NAME:
+                    byte[] name = new byte[len - 4];
+                    for (int i = 0; i < name.length; i++) {
+                        name[i] = response.get(data + i);
+                    }
+                    path = new String(name, StandardCharsets.UTF_8);
+                    break;
+                case UNIX_DIAG_PEER:
+                    peer = response.getInt(data) & 0xffffffffL;
+                    break;
+                case UNIX_DIAG_RQLEN:
+                    rqueue = response.getInt(data) & 0xffffffffL;
+                    wqueue = response.getInt(data + 4) & 0xffffffffL;
+                    break;
+                case UNIX_DIAG_MEMINFO:
+                    memInfo = new int[(len - 4) / 4];
+                    for (int i = 0; i < memInfo.length; i++) {
+                        memInfo[i] = response.getInt(data + i * 4);
+                    }
+                    break;
+                case UNIX_DIAG_UID:
+                    uid = response.getInt(data);
+                    break;
+                default:
+                    break;
+            }
+            off += align(len);
+        }
+        return new UnixSocketInfo(inode, Sock.valueOf(type), UnixSocketInfo.state(state), path, peer,
+                rqueue, wqueue, memInfo, uid);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            Native.libc().close(fd);
+        }
+    }
+}
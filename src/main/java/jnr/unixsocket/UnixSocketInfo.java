@@ -0,0 +1,196 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import jnr.constants.platform.Sock;
+
+/**
+ * The state of a UNIX domain socket as reported by the kernel, see
+ * {@link UnixSocketDiag}. Values the kernel did not report are -1.
+ */
+public final class UnixSocketInfo {
+    /**
+     * The connection state of a socket.
+     */
+    public enum State {
+        UNCONNECTED,
+        CONNECTING,
+        CONNECTED,
+        LISTENING,
+        UNKNOWN,
+    }
+
+    private final long inode;
+    private final Sock type;
+    private final State state;
+    private final String path;
+    private final long peerInode;
+    private final long receiveQueue;
+    private final long sendQueue;
+    private final int[] memInfo;
+    private final int uid;
+
+    UnixSocketInfo(long inode, Sock type, State state, String path, long peerInode,
+                   long receiveQueue, long sendQueue, int[] memInfo, int uid) {
+        this.inode = inode;
+        this.type = type;
+        this.state = state;
+        this.path = path;
+        this.peerInode = peerInode;
+        this.receiveQueue = receiveQueue;
+        this.sendQueue = sendQueue;
+        this.memInfo = memInfo;
+        this.uid = uid;
+    }
+
+    static State state(int tcpState) {
+        switch (tcpState) {
+            case 1:
+                return State.CONNECTED;
+            case 2:
+                return State.CONNECTING;
+            case 7:
+                return State.UNCONNECTED;
+            case 10:
+                return State.LISTENING;
+            default:
+                return State.UNKNOWN;
+        }
+    }
+
+    /**
+     * Retrieves the inode number identifying the socket.
+     *
+     * @return The inode number
+     */
+    public long getInode() {
+        return inode;
+    }
+
+    public Sock getType() {
+        return type;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Retrieves the path the socket is bound to. Paths in the abstract
+     * namespace start with a NUL character.
+     *
+     * @return The path, or null if the socket is not bound
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Retrieves the inode number of the connected peer.
+     *
+     * @return The inode number, or -1 if the socket is not connected
+     */
+    public long getPeerInode() {
+        return peerInode;
+    }
+
+    /**
+     * Retrieves the receive queue length: the number of pending connections
+     * for a listening socket, otherwise the number of bytes (or datagrams'
+     * bytes) queued for reading.
+     *
+     * @return The receive queue length
+     */
+    public long getReceiveQueue() {
+        return receiveQueue;
+    }
+
+    /**
+     * Retrieves the send queue length: the accept backlog for a listening
+     * socket, otherwise the number of bytes sent but not yet read by the peer.
+     *
+     * @return The send queue length
+     */
+    public long getSendQueue() {
+        return sendQueue;
+    }
+
+    /**
+     * Retrieves the memory allocated for received data (SK_MEMINFO_RMEM_ALLOC).
+     *
+     * @return The number of bytes
+     */
+    public long getReceiveMemory() {
+        return memInfo(0);
+    }
+
+    /**
+     * Retrieves the receive buffer size (SK_MEMINFO_RCVBUF).
+     *
+     * @return The number of bytes
+     */
+    public long getReceiveBufferSize() {
+        return memInfo(1);
+    }
+
+    /**
+     * Retrieves the memory allocated for sent data (SK_MEMINFO_WMEM_ALLOC).
+     *
+     * @return The number of bytes
+     */
+    public long getSendMemory() {
+        return memInfo(2);
+    }
+
+    /**
+     * Retrieves the send buffer size (SK_MEMINFO_SNDBUF).
+     *
+     * @return The number of bytes
+     */
+    public long getSendBufferSize() {
+        return memInfo(3);
+    }
+
+    /**
+     * Retrieves the number of packets dropped (SK_MEMINFO_DROPS).
+     *
+     * @return The number of packets
+     */
+    public long getDrops() {
+        return memInfo(8);
+    }
+
+    private long memInfo(int index) {
+        return null != memInfo && index < memInfo.length ? memInfo[index] & 0xffffffffL : -1;
+    }
+
+    /**
+     * Retrieves the owner of the socket, reported since Linux 5.3.
+     *
+     * @return The user id, or -1 if not reported
+     */
+    public int getUid() {
+        return uid;
+    }
+
+    @Override
+    public String toString() {
+        return "UnixSocketInfo[inode=" + inode + ", type=" + type + ", state=" + state
+                + ", path=" + path + ", peer=" + peerInode
+                + ", rq=" + receiveQueue + ", wq=" + sendQueue + "]";
+    }
+}
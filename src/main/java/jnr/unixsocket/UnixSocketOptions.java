@@ -79,5 +79,101 @@ public final class UnixSocketOptions {
     public static final SocketOption<Boolean> SO_PASSCRED =
         new GenericOption<Boolean>("SO_PASSCRED", Boolean.class);
 
+    /**
+     * Get/Set the minimum number of bytes in the receive buffer before
+     * the socket is reported readable.
+     */
+    public static final SocketOption<Integer> SO_RCVLOWAT =
+        new GenericOption<Integer>("SO_RCVLOWAT", Integer.class);
+
+    /**
+     * Get/Set the peek offset for recv with MSG_PEEK (-1 disables it).
+     */
+    public static final SocketOption<Integer> SO_PEEK_OFF =
+        new GenericOption<Integer>("SO_PEEK_OFF", Integer.class);
+
+    /**
+     * Set size of the socket send buffer, ignoring the system limit (privileged).
+     */
+    public static final SocketOption<Integer> SO_SNDBUFFORCE =
+        new GenericOption<Integer>("SO_SNDBUFFORCE", Integer.class);
+
+    /**
+     * Set size of the socket receive buffer, ignoring the system limit (privileged).
+     */
+    public static final SocketOption<Integer> SO_RCVBUFFORCE =
+        new GenericOption<Integer>("SO_RCVBUFFORCE", Integer.class);
+
+    /**
+     * Enable nanosecond kernel receive timestamps, see {@link KernelTimestamp}.
+     * Only supported by datagram channels: Linux never attaches timestamps
+     * to data read from AF_UNIX stream sockets.
+     */
+    public static final SocketOption<Boolean> SO_TIMESTAMPNS =
+        new GenericOption<Boolean>("SO_TIMESTAMPNS", Boolean.class);
+
+    /**
+     * Creates a raw socket option, whose value is passed to and from the
+     * kernel unchanged. Values read are at most 256 bytes long.
+     *
+     * @param level The native protocol level, e.g. SOL_SOCKET
+     * @param optname The native option name
+     * @return The raw socket option
+     */
+    public static SocketOption<byte[]> raw(int level, int optname) {
+        return new RawOption(level, optname, 256);
+    }
+
+    /**
+     * Creates a raw socket option, whose value is passed to and from the
+     * kernel unchanged.
+     *
+     * @param level The native protocol level, e.g. SOL_SOCKET
+     * @param optname The native option name
+     * @param maxLength The maximum length of values read
+     * @return The raw socket option
+     */
+    public static SocketOption<byte[]> raw(int level, int optname, int maxLength) {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("Invalid maximum option length");
+        }
+        return new RawOption(level, optname, maxLength);
+    }
+
+    /**
+     * A socket option identified by its native level and name. Raw options are
+     * accepted by getOption/setOption of all channels, in addition to their
+     * supported options.
+     */
+    static final class RawOption implements SocketOption<byte[]> {
+        final int level;
+        final int optname;
+        final int maxLength;
+
+        RawOption(int level, int optname, int maxLength) {
+            this.level = level;
+            this.optname = optname;
+            this.maxLength = maxLength;
+        }
+
+        @Override public String name() { return "RAW(" + level + "," + optname + ")"; }
+        @Override public Class<byte[]> type() { return byte[].class; }
+        @Override public String toString() { return name(); }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof RawOption)) {
+                return false;
+            }
+            RawOption o = (RawOption) other;
+            return level == o.level && optname == o.optname;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * level + optname;
+        }
+    }
+
 }
 
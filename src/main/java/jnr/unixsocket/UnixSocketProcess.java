@@ -0,0 +1,196 @@
+/*
+ * This file is part of the JNR project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jnr.unixsocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import jnr.constants.platform.Errno;
+import jnr.constants.platform.Fcntl;
+import jnr.constants.platform.Signal;
+import jnr.ffi.Platform;
+import jnr.posix.POSIX;
+import jnr.posix.POSIXFactory;
+import jnr.posix.SpawnFileAction;
+
+/**
+ * A child process connected to this process by a UNIX stream socket.
+ * <p>
+ * {@link #spawn} creates a socketpair and starts the child with
+ * posix_spawnp(3), with one end of the pair installed at a chosen file
+ * descriptor number. The other end is returned as {@link #channel()}, which
+ * can be used like any other {@link UnixSocketChannel}, including selectors,
+ * credentials and descriptor passing. No other descriptor of the pair is
+ * leaked into the child.
+ */
+public final class UnixSocketProcess implements Closeable {
+    private static final int FD_CLOEXEC = 1;
+    // Linux only
+    private static final int SOCK_CLOEXEC = 0x80000;
+
+    private static final class POSIXHolder {
+        static final POSIX posix = POSIXFactory.getNativePOSIX();
+    }
+
+    private final long pid;
+    private final UnixSocketChannel channel;
+    private Integer exitCode = null;
+
+    private UnixSocketProcess(long pid, UnixSocketChannel channel) {
+        this.pid = pid;
+        this.channel = channel;
+    }
+
+    /**
+     * Starts a child process with the current environment.
+     *
+     * @param command The program, looked up in PATH, and its arguments
+     * @param childFd The descriptor number of the socket in the child, e.g. 3
+     * @return The running process
+     * @throws IOException if the process could not be started
+     */
+    public static UnixSocketProcess spawn(List<String> command, int childFd) throws IOException {
+        return spawn(command, childFd, System.getenv());
+    }
+
+    /**
+     * Starts a child process.
+     *
+     * @param command The program, looked up in PATH, and its arguments
+     * @param childFd The descriptor number of the socket in the child, e.g. 3
+     * @param environment The environment of the child
+     * @return The running process
+     * @throws UnsupportedOperationException if posix_spawn is not available
+     * @throws IOException if the process could not be started
+     */
+    public static UnixSocketProcess spawn(List<String> command, int childFd, Map<String, String> environment)
+            throws IOException {
+        if (command.isEmpty()) {
+            throw new IllegalArgumentException("command may not be empty");
+        }
+        if (childFd < 0) {
+            throw new IllegalArgumentException("Invalid child descriptor");
+        }
+        POSIX posix = POSIXHolder.posix;
+        if (!posix.isNative()) {
+            throw new UnsupportedOperationException("posix_spawn is not available");
+        }
+
+        // Keep both ends out of processes spawned concurrently by other
+        // threads. Only SOCK_CLOEXEC does so atomically; elsewhere, FD_CLOEXEC
+        // is set right after the pair has been created.
+        boolean atomic = Platform.getNativePlatform().getOS() == Platform.OS.LINUX;
+        UnixSocketChannel[] sp = UnixSocketChannel.pair(atomic ? SOCK_CLOEXEC : 0);
+        int parentEnd = sp[0].getFD();
+        int childEnd = sp[1].getFD();
+        try {
+            if (!atomic) {
+                posix.fcntlInt(parentEnd, Fcntl.F_SETFD, FD_CLOEXEC);
+                posix.fcntlInt(childEnd, Fcntl.F_SETFD, FD_CLOEXEC);
+            }
+            List<SpawnFileAction> actions = new ArrayList<SpawnFileAction>();
+            if (childEnd == childFd) {
+                // must be inherited as is, so concurrent spawns may inherit it too
+                posix.fcntlInt(childEnd, Fcntl.F_SETFD, 0);
+            } else {
+                // dup2 clears FD_CLOEXEC on the new descriptor
+                actions.add(SpawnFileAction.dup(childEnd, childFd));
+            }
+
+            List<String> env = new ArrayList<String>(environment.size());
+            for (Map.Entry<String, String> e : environment.entrySet()) {
+                env.add(e.getKey() + "=" + e.getValue());
+            }
+
+            long pid = posix.posix_spawnp(command.get(0), actions, command, env);
+            if (pid < 0) {
+                throw new IOException("posix_spawnp failed: " + Errno.valueOf(posix.errno()).description());
+            }
+            // Only release the descriptor, closing the channel would shut down the child's socket
+            Native.libc().close(childEnd);
+            return new UnixSocketProcess(pid, sp[0]);
+        } catch (IOException | RuntimeException e) {
+            sp[0].close();
+            sp[1].close();
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves the parent's end of the socket.
+     *
+     * @return The connected channel
+     */
+    public UnixSocketChannel channel() {
+        return channel;
+    }
+
+    /**
+     * Retrieves the process ID of the child.
+     *
+     * @return The PID
+     */
+    public long pid() {
+        return pid;
+    }
+
+    /**
+     * Waits for the child to terminate.
+     *
+     * @return The exit code of the child, or 128 plus the signal number if
+     *         it was terminated by a signal
+     * @throws IOException if waiting failed
+     */
+    public synchronized int waitFor() throws IOException {
+        if (null == exitCode) {
+            int[] status = new int[1];
+            long n;
+            do {
+                n = POSIXHolder.posix.waitpid(pid, status, 0);
+            } while (n < 0 && POSIXHolder.posix.errno() == Errno.EINTR.intValue());
+            if (n < 0) {
+                throw new IOException("waitpid failed: "
+                        + Errno.valueOf(POSIXHolder.posix.errno()).description());
+            }
+            int signal = status[0] & 0x7f;
+            exitCode = signal == 0 ? (status[0] >> 8) & 0xff : 128 + signal;
+        }
+        return exitCode;
+    }
+
+    /**
+     * Sends SIGTERM to the child, unless it has already been waited for.
+     */
+    public synchronized void destroy() {
+        if (null == exitCode) {
+            POSIXHolder.posix.kill(pid, Signal.SIGTERM.intValue());
+        }
+    }
+
+    /**
+     * Closes the parent's end of the socket. The child sees end-of-stream.
+     *
+     * @throws IOException if closing failed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -49,7 +49,7 @@ public abstract class AbstractNativeSocketChannel extends SocketChannel
         common.setFD(fd);
     }
 
-    public final int getFD() {
+    public int getFD() {
         return common.getFD();
     }
 
@@ -24,6 +24,8 @@ import java.nio.ByteBuffer;
 import jnr.constants.platform.Errno;
 import jnr.enxio.channels.Native;
 import jnr.enxio.channels.NativeException;
+import jnr.unixsocket.SyscallInterceptor.Syscall;
+import jnr.unixsocket.Syscalls;
 
 /**
  * Helper class, providing common methods.
@@ -48,7 +50,9 @@ final class Common {
 
         ByteBuffer buffer = ByteBuffer.allocate(dst.remaining());
 
-        int n = Native.read(_fd, buffer);
+        long t = Syscalls.begin(Syscall.READ, _fd, buffer.capacity());
+        int n = t == Syscalls.FAILED ? -1 : Native.read(_fd, buffer);
+        Syscalls.end(Syscall.READ, _fd, buffer.capacity(), n, t);
 
         buffer.flip();
 
@@ -102,7 +106,9 @@ final class Common {
         
         buffer.position(0);
 
-        int n = Native.write(_fd, buffer);
+        long t = Syscalls.begin(Syscall.WRITE, _fd, r);
+        int n = t == Syscalls.FAILED ? -1 : Native.write(_fd, buffer);
+        Syscalls.end(Syscall.WRITE, _fd, r, n, t);
 
         if (n >=0 ) {
             if (n < r) {
@@ -0,0 +1,52 @@
+package jnr.unixsocket;
+
+import java.util.BitSet;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class AffinityThreadFactoryTest {
+
+    @Test
+    public void spreadTest() throws Exception {
+        Assume.assumeTrue(ThreadAffinity.isSupported());
+
+        BitSet available = AffinityThreadFactory.availableCpus();
+        AffinityThreadFactory factory = new AffinityThreadFactory("loop", available,
+                AffinityThreadFactory.Mode.SPREAD);
+        final BitSet[] seen = new BitSet[2];
+        for (int i = 0; i < seen.length; i++) {
+            final int index = i;
+            Thread t = factory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        seen[index] = ThreadAffinity.get();
+                    } catch (Exception e) {
+                        // seen stays null
+                    }
+                }
+            });
+            assertEquals("thread name", "loop-" + i, t.getName());
+            t.start();
+            t.join();
+            assertEquals("pinned", factory.cpusFor(i), seen[i]);
+            assertEquals("single cpu", 1, seen[i].cardinality());
+        }
+        if (available.cardinality() > 1) {
+            assertFalse("spread across cpus", seen[0].equals(seen[1]));
+        }
+        assertEquals("main thread untouched", available, ThreadAffinity.get());
+    }
+
+    @Test
+    public void sharedTest() throws Exception {
+        BitSet cpus = new BitSet();
+        cpus.set(0, 2);
+        AffinityThreadFactory factory = new AffinityThreadFactory("worker", cpus,
+                AffinityThreadFactory.Mode.SHARED);
+        assertEquals("all cpus", cpus, factory.cpusFor(5));
+    }
+}
@@ -25,12 +25,15 @@ import static junit.framework.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.DatagramPacket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AlreadyBoundException;
 import java.nio.channels.DatagramChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.Arrays;
 
 import jnr.ffi.Platform;
 import jnr.ffi.Platform.OS;
@@ -130,6 +133,113 @@ public class BasicDatagramFunctionalityTest {
         }
     }
 
+    @Test
+    public void connectedSendTest() throws Exception {
+        UnixSocketAddress serverAddress = makeAddress();
+        UnixDatagramChannel server = UnixDatagramChannel.open().bind(serverAddress);
+        UnixDatagramChannel client = UnixDatagramChannel.open().connect(serverAddress);
+        try {
+            assertTrue("Channel is connected", client.isConnected());
+
+            // connected at the kernel level, so a plain write reaches the peer
+            ByteBuffer txbuf = StandardCharsets.UTF_8.encode(DATA);
+            assertEquals("written", DATA.length(), client.write(txbuf));
+            txbuf = StandardCharsets.UTF_8.encode(DATA);
+            assertEquals("sent", DATA.length(), client.send(txbuf, null));
+
+            ByteBuffer rxbuf = ByteBuffer.allocate(1024);
+            for (int i = 0; i < 2; i++) {
+                rxbuf.clear();
+                server.receive(rxbuf);
+                rxbuf.flip();
+                assertEquals("received data", DATA, StandardCharsets.UTF_8.decode(rxbuf).toString());
+            }
+
+            client.disconnect();
+            assertFalse("Channel is disconnected", client.isConnected());
+            txbuf = StandardCharsets.UTF_8.encode(DATA);
+            assertEquals("sent", DATA.length(), client.send(txbuf, serverAddress));
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void connectToMissingPeerTest() throws Exception {
+        UnixDatagramChannel ch = UnixDatagramChannel.open();
+        try {
+            ch.connect(makeAddress());
+            fail("Should have thrown IOException");
+        } catch (IOException iox) {
+            assertFalse("Channel is not connected", ch.isConnected());
+        } finally {
+            ch.close();
+        }
+    }
+
+    @Test
+    public void datagramPacketTest() throws Exception {
+        UnixSocketAddress serverAddress = makeAddress();
+        UnixDatagramChannel server = UnixDatagramChannel.open().bind(serverAddress);
+        UnixDatagramChannel client = UnixDatagramChannel.open().bind(null);
+        try {
+            byte[] txdata = DATA.getBytes(StandardCharsets.UTF_8);
+            byte[] txbuf = new byte[txdata.length + 4];
+            System.arraycopy(txdata, 0, txbuf, 2, txdata.length);
+            client.socket().send(new DatagramPacket(txbuf, 2, txdata.length), serverAddress);
+
+            byte[] rxbuf = new byte[1024];
+            DatagramPacket packet = new DatagramPacket(rxbuf, 8, rxbuf.length - 8);
+            UnixSocketAddress source = server.socket().receiveFrom(packet);
+            assertEquals("received length", txdata.length, packet.getLength());
+            assertEquals("received data", DATA, new String(rxbuf, 8, packet.getLength(), StandardCharsets.UTF_8));
+            assertEquals("source address", client.getLocalSocketAddress(), source);
+
+            // reply through a connected socket without an address in the packet
+            client.connect(serverAddress);
+            client.socket().send(new DatagramPacket(txdata, txdata.length));
+            packet.setLength(rxbuf.length - 8);
+            server.socket().receive(packet);
+            assertEquals("received length", txdata.length, packet.getLength());
+
+            server.setOption(UnixSocketOptions.SO_RCVTIMEO, 100);
+            try {
+                server.socket().receive(packet);
+                fail("Should have thrown SocketTimeoutException");
+            } catch (SocketTimeoutException stx) {
+                // expected
+            }
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void reusedPacketTest() throws Exception {
+        UnixDatagramChannel[] sp = UnixDatagramChannel.pair();
+        try {
+            byte[] rxbuf = new byte[64];
+            DatagramPacket packet = new DatagramPacket(rxbuf, 4, 16);
+            sp[0].write(ByteBuffer.wrap(new byte[] { 1, 2 }));
+            sp[1].socket().receive(packet);
+            assertEquals("small datagram", 2, packet.getLength());
+
+            byte[] large = new byte[32];
+            Arrays.fill(large, (byte) 7);
+            packet.setLength(16);
+            sp[0].write(ByteBuffer.wrap(large));
+            sp[1].socket().receive(packet);
+            assertEquals("truncated datagram", 16, packet.getLength());
+            assertEquals("data", (byte) 7, rxbuf[4 + 16 - 1]);
+            assertEquals("past offset + length", (byte) 0, rxbuf[4 + 16]);
+        } finally {
+            sp[0].close();
+            sp[1].close();
+        }
+    }
+
     @Test
     public void pairTest() throws Exception {
         UnixDatagramChannel[] sp = UnixDatagramChannel.pair();
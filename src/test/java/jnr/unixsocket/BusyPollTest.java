@@ -0,0 +1,65 @@
+package jnr.unixsocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class BusyPollTest {
+
+    @Test
+    public void streamTest() throws Exception {
+        final UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        BusyPoll policy = new BusyPoll(10, TimeUnit.MILLISECONDS);
+        sp[0].setBusyPoll(policy);
+        ByteBuffer buf = ByteBuffer.allocate(16);
+
+        sp[1].write(ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("read", 3, sp[0].read(buf));
+        assertEquals("hit", 1, policy.getHits());
+
+        // nothing arrives within the budget, so the read blocks
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                    sp[1].write(ByteBuffer.wrap("bar".getBytes(StandardCharsets.UTF_8)));
+                    sp[1].close();
+                } catch (Exception e) {
+                    // the read below fails
+                }
+            }
+        };
+        writer.start();
+        buf.clear();
+        assertEquals("read", 3, sp[0].read(buf));
+        writer.join();
+        assertEquals("miss", 1, policy.getMisses());
+        assertEquals("hit rate", 0.5, policy.getHitRate(), 0.001);
+
+        buf.clear();
+        assertEquals("end of stream", -1, sp[0].read(buf));
+        sp[0].close();
+    }
+
+    @Test
+    public void datagramTest() throws Exception {
+        UnixDatagramChannel[] sp = UnixDatagramChannel.pair();
+        BusyPoll policy = new BusyPoll(10, TimeUnit.MILLISECONDS);
+        sp[0].setBusyPoll(policy);
+
+        sp[1].write(ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8)));
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        assertNotNull("source", sp[0].receive(buf));
+        assertEquals("received", 3, buf.position());
+        assertEquals("hit", 1, policy.getHits());
+        assertEquals("miss", 0, policy.getMisses());
+
+        sp[0].close();
+        sp[1].close();
+    }
+}
@@ -114,6 +114,57 @@ public class ChannelOptionsTest {
         }
     }
 
+    @Test
+    public void lowWaterMarkOptionTest() throws Exception {
+        UnixSocketChannel ch = UnixSocketChannel.open();
+        assertTrue("SO_RCVLOWAT supported", ch.supportedOptions().contains(UnixSocketOptions.SO_RCVLOWAT));
+        ch.setOption(UnixSocketOptions.SO_RCVLOWAT, Integer.valueOf(64));
+        assertEquals("Changed value of SO_RCVLOWAT", 64, ch.getOption(UnixSocketOptions.SO_RCVLOWAT).intValue());
+    }
+
+    @Test
+    public void peekOffsetOptionTest() throws Exception {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+
+        UnixDatagramChannel ch = UnixDatagramChannel.open();
+        assertEquals("Initial value of SO_PEEK_OFF", -1, ch.getOption(UnixSocketOptions.SO_PEEK_OFF).intValue());
+        ch.setOption(UnixSocketOptions.SO_PEEK_OFF, Integer.valueOf(0));
+        assertEquals("Changed value of SO_PEEK_OFF", 0, ch.getOption(UnixSocketOptions.SO_PEEK_OFF).intValue());
+    }
+
+    @Test
+    public void writeonlyChannelOptionTest() throws Exception {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+
+        UnixSocketChannel ch = UnixSocketChannel.open();
+        assertTrue("SO_RCVBUFFORCE supported", ch.supportedOptions().contains(UnixSocketOptions.SO_RCVBUFFORCE));
+        try {
+            ch.getOption(UnixSocketOptions.SO_RCVBUFFORCE);
+            fail("Should have thrown AssertionError");
+        } catch (AssertionError ae) {
+            assertEquals("exception message", ae.getMessage(), "Option not found");
+        }
+    }
+
+    @Test
+    public void rawOptionTest() throws Exception {
+        UnixSocketChannel ch = UnixSocketChannel.open();
+        java.net.SocketOption<byte[]> type = UnixSocketOptions.raw(
+                jnr.constants.platform.SocketLevel.SOL_SOCKET.intValue(),
+                jnr.constants.platform.SocketOption.SO_TYPE.intValue());
+        byte[] value = ch.getOption(type);
+        assertEquals("SO_TYPE length", 4, value.length);
+        int sockType = java.nio.ByteBuffer.wrap(value).order(java.nio.ByteOrder.nativeOrder()).getInt();
+        assertEquals("SO_TYPE", jnr.constants.platform.Sock.SOCK_STREAM.intValue(), sockType);
+
+        java.net.SocketOption<byte[]> keepalive = UnixSocketOptions.raw(
+                jnr.constants.platform.SocketLevel.SOL_SOCKET.intValue(),
+                jnr.constants.platform.SocketOption.SO_KEEPALIVE.intValue());
+        byte[] on = java.nio.ByteBuffer.allocate(4).order(java.nio.ByteOrder.nativeOrder()).putInt(1).array();
+        ch.setOption(keepalive, on);
+        assertTrue("SO_KEEPALIVE set through raw option", ch.getOption(UnixSocketOptions.SO_KEEPALIVE).booleanValue());
+    }
+
     @Test
     // Linux doubles the values when setting.
     // OSX keeps settings consistent but restricts possible values to a multiple of 256
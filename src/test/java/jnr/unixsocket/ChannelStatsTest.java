@@ -0,0 +1,90 @@
+package jnr.unixsocket;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+import jnr.ffi.Platform;
+import jnr.ffi.Platform.OS;
+
+public class ChannelStatsTest {
+
+    @Test
+    public void streamTest() throws Exception {
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        ChannelStats stats = new ChannelStats();
+        sp[0].setStats(stats);
+        sp[1].setStats(stats);
+
+        sp[0].write(ByteBuffer.wrap(new byte[10]));
+        assertEquals("short read", 10, sp[1].read(ByteBuffer.allocate(64)));
+        assertEquals("nothing to read", 0, sp[1].tryRead(ByteBuffer.allocate(64)));
+
+        assertEquals("bytes out", 10, stats.getBytesWritten());
+        assertEquals("bytes in", 10, stats.getBytesRead());
+        assertEquals("writes", 1, stats.getWriteCalls());
+        assertEquals("reads", 2, stats.getReadCalls());
+        assertEquals("short reads", 1, stats.getShortReads());
+        assertEquals("EAGAIN", 1, stats.getWouldBlock());
+
+        sp[0].setStats(null);
+        sp[0].write(ByteBuffer.wrap(new byte[10]));
+        assertEquals("disabled", 1, stats.getWriteCalls());
+
+        stats.reset();
+        assertEquals("reset", 0, stats.getBytesRead());
+        sp[0].close();
+        sp[1].close();
+    }
+
+    @Test
+    public void truncatedDatagramTest() throws Exception {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+
+        UnixDatagramChannel[] sp = UnixDatagramChannel.pair();
+        ChannelStats stats = new ChannelStats();
+        sp[1].setStats(stats);
+        sp[0].write(ByteBuffer.wrap(new byte[100]));
+        ByteBuffer small = ByteBuffer.allocate(40);
+        assertNotNull("received", sp[1].receive(small));
+        assertEquals("truncated to the buffer", 40, small.position());
+        assertEquals("truncated", 1, stats.getTruncatedDatagrams());
+        assertEquals("bytes in", 40, stats.getBytesRead());
+        assertNull("nothing left", sp[1].tryReceive(ByteBuffer.allocate(40)));
+        assertEquals("EAGAIN", 1, stats.getWouldBlock());
+        sp[0].close();
+        sp[1].close();
+    }
+
+    @Test
+    public void registryTest() throws Exception {
+        ChannelStatsRegistry registry = new ChannelStatsRegistry("test");
+        ChannelStats a = registry.register("a");
+        assertSame("same counters", a, registry.register("a"));
+        ChannelStats b = registry.register("b");
+        a.write(10, 10);
+        b.write(10, 5);
+
+        registry.registerMBeans();
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            assertEquals("total", 15L, mbs.getAttribute(registry.objectName(), "BytesWritten"));
+            assertEquals("per channel", 5L, mbs.getAttribute(
+                    new ObjectName("jnr.unixsocket:type=ChannelStats,registry=\"test\",name=\"b\""), "BytesWritten"));
+            assertEquals("partial writes", 1L, mbs.getAttribute(registry.objectName(), "PartialWrites"));
+
+            registry.unregister("b");
+            assertEquals("channels", 1, registry.getChannelCount());
+            assertEquals("total keeps retired counts", 15, registry.getBytesWritten());
+        } finally {
+            registry.unregisterMBeans();
+        }
+    }
+}
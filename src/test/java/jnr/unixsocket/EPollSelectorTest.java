@@ -0,0 +1,268 @@
+package jnr.unixsocket;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+import jnr.ffi.Platform;
+import jnr.ffi.Platform.OS;
+
+public class EPollSelectorTest {
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+    }
+
+    @Test
+    public void levelTriggeredTest() throws Exception {
+        Selector selector = EPollSelectorProvider.getInstance().openSelector();
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        sp[0].configureBlocking(false);
+        SelectionKey key = sp[0].register(selector, SelectionKey.OP_READ, "attachment");
+
+        assertEquals("nothing ready", 0, selector.selectNow());
+        sp[1].write(ByteBuffer.wrap(new byte[] { 1, 2 }));
+        assertEquals("one key selected", 1, selector.select(1000));
+        assertTrue("selected", selector.selectedKeys().contains(key));
+        assertTrue("readable", key.isReadable());
+        assertEquals("attachment", "attachment", key.attachment());
+
+        // still ready until the data is consumed
+        selector.selectedKeys().clear();
+        assertEquals("selected again", 1, selector.selectNow());
+        sp[0].read(ByteBuffer.allocate(16));
+        selector.selectedKeys().clear();
+        assertEquals("nothing ready", 0, selector.selectNow());
+
+        key.interestOps(SelectionKey.OP_WRITE);
+        assertEquals("writable", 1, selector.selectNow());
+        assertTrue("writable", key.isWritable());
+
+        key.cancel();
+        selector.selectNow();
+        assertTrue("deregistered", selector.keys().isEmpty());
+        selector.close();
+        sp[0].close();
+        sp[1].close();
+    }
+
+    @Test
+    public void edgeTriggeredTest() throws Exception {
+        EPollSelector selector = EPollSelectorProvider.getInstance().openSelector(true);
+        assertTrue("edge-triggered", selector.isEdgeTriggered());
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        sp[0].configureBlocking(false);
+        sp[0].register(selector, SelectionKey.OP_READ);
+
+        sp[1].write(ByteBuffer.wrap(new byte[] { 1 }));
+        assertEquals("selected on arrival", 1, selector.select(1000));
+        selector.selectedKeys().clear();
+        assertEquals("not selected again", 0, selector.selectNow());
+
+        sp[1].write(ByteBuffer.wrap(new byte[] { 2 }));
+        assertEquals("selected on new data", 1, selector.select(1000));
+        selector.close();
+        sp[0].close();
+        sp[1].close();
+    }
+
+    @Test
+    public void pollTest() throws Exception {
+        EPollSelector selector = EPollSelectorProvider.getInstance().openSelector(false);
+        int count = 100;
+        UnixSocketChannel[][] pairs = new UnixSocketChannel[count][];
+        for (int i = 0; i < count; i++) {
+            pairs[i] = UnixSocketChannel.pair();
+            pairs[i][0].configureBlocking(false);
+            pairs[i][0].register(selector, SelectionKey.OP_READ, i);
+        }
+        for (int i = 0; i < count; i += 2) {
+            pairs[i][1].write(ByteBuffer.wrap(new byte[] { 1 }));
+        }
+
+        SelectionKey[] ready = new SelectionKey[count];
+        assertEquals("half of the channels ready", count / 2, selector.poll(ready, 1000));
+        for (int i = 0; i < count / 2; i++) {
+            assertEquals("even channel", 0, (Integer) ready[i].attachment() % 2);
+            assertTrue("readable", ready[i].isReadable());
+        }
+        assertTrue("selected-key set untouched", selector.selectedKeys().isEmpty());
+
+        // closing channels removes their keys from the index
+        for (int i = 0; i < count; i += 2) {
+            pairs[i][0].close();
+            pairs[i][1].close();
+        }
+        assertEquals("closed channels gone", 0, selector.poll(ready, 0));
+        assertEquals("remaining keys", count / 2, selector.keys().size());
+
+        selector.close();
+        for (int i = 1; i < count; i += 2) {
+            pairs[i][0].close();
+            pairs[i][1].close();
+        }
+    }
+
+    @Test
+    public void edgeTriggeredPollTest() throws Exception {
+        EPollSelector selector = EPollSelectorProvider.getInstance().openSelector(true);
+        int count = 10;
+        UnixSocketChannel[][] pairs = new UnixSocketChannel[count][];
+        for (int i = 0; i < count; i++) {
+            pairs[i] = UnixSocketChannel.pair();
+            pairs[i][0].configureBlocking(false);
+            pairs[i][0].register(selector, SelectionKey.OP_READ, i);
+            pairs[i][1].write(ByteBuffer.wrap(new byte[] { 1 }));
+        }
+
+        // fewer slots than ready channels: the rest must be reported by later calls
+        SelectionKey[] ready = new SelectionKey[4];
+        boolean[] seen = new boolean[count];
+        int total = 0;
+        for (int n; (n = selector.poll(ready, 0)) > 0; ) {
+            for (int i = 0; i < n; i++) {
+                int id = (Integer) ready[i].attachment();
+                assertFalse("reported once", seen[id]);
+                seen[id] = true;
+            }
+            total += n;
+        }
+        assertEquals("all channels reported", count, total);
+
+        selector.close();
+        for (int i = 0; i < count; i++) {
+            pairs[i][0].close();
+            pairs[i][1].close();
+        }
+    }
+
+    @Test
+    public void wakeupTest() throws Exception {
+        final Selector selector = EPollSelectorProvider.getInstance().openSelector();
+        Thread waker = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                selector.wakeup();
+            }
+        };
+        long start = System.nanoTime();
+        waker.start();
+        assertEquals("woken up", 0, selector.select(10000));
+        assertTrue("woken up early", System.nanoTime() - start < 5000000000L);
+        waker.join();
+
+        selector.wakeup();
+        assertEquals("pending wakeup", 0, selector.select());
+        selector.close();
+        assertFalse("closed", selector.isOpen());
+    }
+
+    @Test
+    public void wakeupAfterCloseTest() throws Exception {
+        Selector selector = EPollSelectorProvider.getInstance().openSelector();
+        selector.close();
+        // the sockets most likely reuse the numbers of the closed descriptors
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        UnixSocketChannel[] sp2 = UnixSocketChannel.pair();
+        try {
+            selector.wakeup();
+            for (UnixSocketChannel ch : new UnixSocketChannel[] { sp[0], sp[1], sp2[0], sp2[1] }) {
+                assertEquals("nothing written to fd " + ch.getFD(), 0, ch.tryRead(ByteBuffer.allocate(8)));
+            }
+        } finally {
+            sp[0].close();
+            sp[1].close();
+            sp2[0].close();
+            sp2[1].close();
+        }
+    }
+
+    @Test
+    public void concurrentRegisterCancelSelectTest() throws Exception {
+        final EPollSelector selector = EPollSelectorProvider.getInstance().openSelector(false);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread selecting = new Thread() {
+            @Override
+            public void run() {
+                SelectionKey[] ready = new SelectionKey[8];
+                try {
+                    while (running.get()) {
+                        selector.selectNow();
+                        selector.selectedKeys().clear();
+                        selector.poll(ready, 0);
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        Thread[] registering = new Thread[2];
+        for (int i = 0; i < registering.length; i++) {
+            registering[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (running.get()) {
+                            UnixSocketChannel[] sp = UnixSocketChannel.pair();
+                            sp[0].configureBlocking(false);
+                            sp[0].register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE).cancel();
+                            sp[0].close();
+                            sp[1].close();
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            };
+        }
+        selecting.setDaemon(true);
+        selecting.start();
+        for (Thread t : registering) {
+            t.setDaemon(true);
+            t.start();
+        }
+        Thread.sleep(1000);
+        running.set(false);
+        selecting.join(5000);
+        assertFalse("selecting thread deadlocked", selecting.isAlive());
+        for (Thread t : registering) {
+            t.join(5000);
+            assertFalse("registering thread deadlocked", t.isAlive());
+        }
+        assertNull("no failure", failure.get());
+        selector.close();
+    }
+
+    @Test
+    public void keyIndexTest() throws Exception {
+        EPollSelector.KeyIndex index = new EPollSelector.KeyIndex();
+        EPollSelector.Key[] keys = new EPollSelector.Key[1000];
+        for (int fd = 0; fd < keys.length; fd++) {
+            keys[fd] = new EPollSelector.Key(null, null, fd, 0);
+            index.put(fd, keys[fd]);
+        }
+        assertEquals("size", keys.length, index.size());
+        for (int fd = 0; fd < keys.length; fd += 3) {
+            index.remove(fd);
+        }
+        for (int fd = 0; fd < keys.length; fd++) {
+            assertEquals("lookup " + fd, fd % 3 == 0 ? null : keys[fd], index.get(fd));
+        }
+        assertNull("unknown", index.get(4711));
+    }
+}
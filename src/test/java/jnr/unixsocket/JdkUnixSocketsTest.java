@@ -0,0 +1,150 @@
+package jnr.unixsocket;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.UnsupportedAddressTypeException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import jnr.ffi.Platform;
+import jnr.ffi.Platform.OS;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class JdkUnixSocketsTest {
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(JdkUnixSockets.isSupported());
+        file = Files.createTempFile("jnr-unixsocket-jdk", ".sock").toFile();
+        file.delete();
+        file.deleteOnExit();
+    }
+
+    @Test
+    public void testFactories() throws Exception {
+        UnixSocketChannel channel = UnixSocketChannel.open();
+        assertFalse("native channel", channel instanceof JdkUnixSocketChannel);
+        assertNull("no JDK channel", channel.getJdkChannel());
+        channel.close();
+
+        channel = UnixSocketChannel.openJdk();
+        assertTrue("delegating channel", channel instanceof JdkUnixSocketChannel);
+        assertNotNull("JDK channel", channel.getJdkChannel());
+        channel.close();
+
+        UnixServerSocketChannel server = UnixServerSocketChannel.open();
+        assertNull("no JDK server channel", server.getJdkChannel());
+        server.close();
+        server = UnixServerSocketChannel.openJdk();
+        assertNotNull("JDK server channel", server.getJdkChannel());
+        server.close();
+    }
+
+    @Test
+    public void testJdkSelector() throws Exception {
+        UnixSocketAddress address = new UnixSocketAddress(file);
+        UnixServerSocketChannel server = UnixServerSocketChannel.openJdk();
+        server.socket().bind(address);
+        UnixSocketChannel client = UnixSocketChannel.openJdk(address);
+        UnixSocketChannel accepted = server.accept();
+
+        Selector selector = Selector.open();
+        accepted.configureBlocking(false);
+        accepted.getJdkChannel().register(selector, SelectionKey.OP_READ);
+        assertEquals("nothing ready", 0, selector.selectNow());
+        client.write(ByteBuffer.wrap("baz".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("readable", 1, selector.select(5000));
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        assertEquals("read", 3, accepted.read(buf));
+        assertEquals("nothing left", 0, accepted.read(buf));
+
+        selector.close();
+        client.close();
+        accepted.close();
+        server.close();
+    }
+
+    @Test
+    public void testDelegatedRoundTrip() throws Exception {
+        UnixSocketAddress address = new UnixSocketAddress(file);
+        UnixServerSocketChannel server = new JdkUnixServerSocketChannel();
+        server.socket().bind(address);
+        assertEquals("bound address", address, server.getLocalSocketAddress());
+
+        UnixSocketChannel client = new JdkUnixSocketChannel();
+        assertTrue("connected", client.connect(address));
+        assertEquals("remote address", address, client.getRemoteSocketAddress());
+        UnixSocketChannel accepted = server.accept();
+        assertTrue("accepted", accepted instanceof JdkUnixSocketChannel);
+
+        ChannelStats stats = new ChannelStats();
+        client.setStats(stats);
+        assertEquals("written", 3, client.write(ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8))));
+        assertEquals("bytes counted", 3, stats.getBytesWritten());
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        assertEquals("read", 3, accepted.read(buf));
+        assertEquals("data", "foo", new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8));
+
+        client.setOption(UnixSocketOptions.SO_SNDBUF, 65536);
+        assertTrue("send buffer", client.getOption(UnixSocketOptions.SO_SNDBUF) > 0);
+        try {
+            client.getOption(UnixSocketOptions.SO_PEERCRED);
+            fail("credentials need a native channel");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        client.close();
+        buf.clear();
+        assertEquals("end of stream", -1, accepted.read(buf));
+        accepted.close();
+        server.close();
+    }
+
+    @Test
+    public void testNativeClient() throws Exception {
+        UnixSocketAddress address = new UnixSocketAddress(file);
+        UnixServerSocketChannel server = new JdkUnixServerSocketChannel();
+        server.socket().bind(address);
+
+        UnixSocketChannel client = new UnixSocketChannel();
+        client.connect(address);
+        UnixSocketChannel accepted = server.accept();
+        accepted.write(ByteBuffer.wrap("bar".getBytes(StandardCharsets.UTF_8)));
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        assertEquals("read", 3, client.read(buf));
+
+        client.close();
+        accepted.close();
+        server.close();
+    }
+
+    @Test
+    public void testAbstractNamespace() throws Exception {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+        UnixSocketAddress address = new UnixSocketAddress("\000jnr-jdk-test");
+        UnixServerSocketChannel server = UnixServerSocketChannel.open();
+        server.socket().bind(address);
+        UnixSocketChannel client = UnixSocketChannel.openJdk(address);
+        assertFalse("abstract addresses stay native", client instanceof JdkUnixSocketChannel);
+        client.close();
+        server.close();
+
+        UnixSocketChannel channel = UnixSocketChannel.openJdk();
+        try {
+            channel.connect(address);
+            fail("abstract namespace is not supported by the JDK");
+        } catch (UnsupportedAddressTypeException e) {
+            // expected
+        } finally {
+            channel.close();
+        }
+    }
+}
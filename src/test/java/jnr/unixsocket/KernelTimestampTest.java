@@ -0,0 +1,98 @@
+package jnr.unixsocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+import jnr.ffi.Platform;
+import jnr.ffi.Platform.OS;
+
+public class KernelTimestampTest {
+
+    @Before
+    public void linuxOnly() {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+    }
+
+    @Test
+    public void datagramTimestampTest() throws Exception {
+        UnixDatagramChannel server = UnixDatagramChannel.open().bind(null);
+        UnixDatagramChannel client = UnixDatagramChannel.open().bind(null);
+        server.setOption(UnixSocketOptions.SO_TIMESTAMPNS, Boolean.TRUE);
+        assertTrue("SO_TIMESTAMPNS enabled", server.getOption(UnixSocketOptions.SO_TIMESTAMPNS).booleanValue());
+
+        KernelTimestamp ts = new KernelTimestamp();
+        for (ByteBuffer buf : new ByteBuffer[] { ByteBuffer.allocate(16), ByteBuffer.allocateDirect(16) }) {
+            long before = System.currentTimeMillis();
+            client.send(ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8)), server.getLocalSocketAddress());
+            long after = System.currentTimeMillis();
+
+            UnixSocketAddress sender = server.receive(buf, ts);
+            assertEquals("sender", client.getLocalSocketAddress(), sender);
+            assertEquals("received", 3, buf.position());
+            buf.flip();
+            assertEquals("data", "foo", StandardCharsets.UTF_8.decode(buf).toString());
+            assertTrue("timestamp is valid", ts.isValid());
+            long millis = ts.toNanos() / 1000000L;
+            assertTrue("timestamp within send window", millis >= before - 1 && millis <= after + 1);
+        }
+
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void largeDatagramTest() throws Exception {
+        UnixDatagramChannel[] sp = UnixDatagramChannel.pair();
+        sp[0].setOption(UnixSocketOptions.SO_TIMESTAMPNS, Boolean.TRUE);
+        // larger than the per-thread scratch buffer, received in one call
+        byte[] data = new byte[MessageHeader.MAX_DATA + 1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        sp[1].write(ByteBuffer.wrap(data));
+
+        KernelTimestamp ts = new KernelTimestamp();
+        ByteBuffer buf = ByteBuffer.allocate(2 * MessageHeader.MAX_DATA);
+        sp[0].receive(buf, ts);
+        assertEquals("received", data.length, buf.position());
+        assertTrue("data", Arrays.equals(data, Arrays.copyOf(buf.array(), data.length)));
+        assertTrue("timestamp is valid", ts.isValid());
+        sp[0].close();
+        sp[1].close();
+    }
+
+    @Test
+    public void disabledTimestampTest() throws Exception {
+        UnixDatagramChannel[] sp = UnixDatagramChannel.pair();
+        sp[1].write(ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8)));
+
+        KernelTimestamp ts = new KernelTimestamp();
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        sp[0].receive(buf, ts);
+        assertEquals("received", 3, buf.position());
+        assertFalse("timestamp is invalid", ts.isValid());
+        sp[0].close();
+        sp[1].close();
+    }
+
+    @Test
+    public void streamUnsupportedTest() throws Exception {
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        assertFalse("stream option", sp[0].supportedOptions().contains(UnixSocketOptions.SO_TIMESTAMPNS));
+        try {
+            sp[0].setOption(UnixSocketOptions.SO_TIMESTAMPNS, Boolean.TRUE);
+            fail("timestamps on a stream socket");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        sp[0].close();
+        sp[1].close();
+    }
+}
@@ -0,0 +1,43 @@
+package jnr.unixsocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+import jnr.constants.platform.Errno;
+import jnr.constants.platform.ProtocolFamily;
+import jnr.constants.platform.Sock;
+
+public class NativeBackendTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        NativeBackend backend = Native.backend();
+        int[] sv = new int[2];
+        assertEquals("socketpair", 0,
+                backend.socketpair(ProtocolFamily.PF_UNIX.intValue(), Sock.SOCK_STREAM.intValue(), 0, sv));
+        try {
+            ByteBuffer src = ByteBuffer.wrap("foobar".getBytes(StandardCharsets.UTF_8));
+            ByteBuffer dst = ByteBuffer.allocateDirect(16);
+            assertEquals("send", 3, backend.send(sv[0], src, 3, 0));
+            assertEquals("write", 6, backend.write(sv[0], src, 6));
+            assertEquals("recv", 3, backend.recv(sv[1], dst, 3, 0));
+            assertEquals("read", 6, backend.read(sv[1], dst, 16));
+            assertEquals("position untouched", 0, dst.position());
+
+            ByteBuffer heap = ByteBuffer.allocate(16);
+            assertEquals("send", 6, backend.send(sv[0], src, 6, 0));
+            assertEquals("recv heap", 6, backend.recv(sv[1], heap, 16, 0));
+            assertEquals("heap data", "foobar", new String(heap.array(), 0, 6, StandardCharsets.UTF_8));
+
+            assertEquals("bad fd", -1, backend.recv(-1, dst, 16, 0));
+            assertEquals("errno", Errno.EBADF, Native.getLastError());
+        } finally {
+            Native.libc().close(sv[0]);
+            Native.libc().close(sv[1]);
+        }
+    }
+}
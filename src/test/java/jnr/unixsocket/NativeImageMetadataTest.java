@@ -0,0 +1,140 @@
+package jnr.unixsocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.kenai.jffi.internal.StubLoader;
+import jnr.ffi.LibraryOption;
+import jnr.ffi.provider.LoadedLibrary;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class NativeImageMetadataTest {
+    private static final String DIR = "META-INF/native-image/com.github.jnr/jnr-unixsocket/";
+
+    private static String read(String name) throws Exception {
+        InputStream in = NativeImageMetadataTest.class.getClassLoader().getResourceAsStream(DIR + name);
+        assertNotNull(name, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = in.read(buf)) > 0; ) {
+                out.write(buf, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testReflectedClassesExist() throws Exception {
+        Matcher m = Pattern.compile("\"name\": \"([^\"<]+)\"").matcher(read("reflect-config.json"));
+        int found = 0;
+        while (m.find()) {
+            Class.forName(m.group(1), false, getClass().getClassLoader());
+            found++;
+        }
+        assertTrue("classes listed", found > 0);
+    }
+
+    private static List<List<String>> proxies() throws Exception {
+        Matcher m = Pattern.compile("\"interfaces\": \\[([^\\]]+)\\]").matcher(read("proxy-config.json"));
+        List<List<String>> proxies = new ArrayList<List<String>>();
+        while (m.find()) {
+            List<String> names = new ArrayList<String>();
+            Matcher name = Pattern.compile("\"([^\"]+)\"").matcher(m.group(1));
+            while (name.find()) {
+                names.add(name.group(1));
+            }
+            proxies.add(names);
+        }
+        return proxies;
+    }
+
+    @Test
+    public void testProxiedInterfacesExist() throws Exception {
+        List<List<String>> proxies = proxies();
+        assertTrue("interfaces listed", proxies.size() > 0);
+        for (List<String> names : proxies) {
+            // jnr-ffi's reflection loader proxies the library interface together with LoadedLibrary
+            assertEquals(names.toString(), 2, names.size());
+            assertEquals(names.toString(), LoadedLibrary.class.getName(), names.get(1));
+            for (String name : names) {
+                assertTrue(name, Class.forName(name, false, getClass().getClassLoader()).isInterface());
+            }
+        }
+    }
+
+    @Test
+    public void testProxyMatchesReflectionLoader() throws Exception {
+        // load libc the way jnr-ffi does with jnr.ffi.asm.enabled=false and compare the proxy it builds
+        ClassLoader loader = LoadedLibrary.class.getClassLoader();
+        Class<?> libraryClass = Class.forName("jnr.ffi.provider.jffi.NativeLibrary", true, loader);
+        Constructor<?> newLibrary = libraryClass.getDeclaredConstructor(Collection.class, Collection.class, Map.class);
+        newLibrary.setAccessible(true);
+        Object library = newLibrary.newInstance(Arrays.asList(Native.libnames), Collections.<String>emptyList(),
+                Collections.<LibraryOption, Object>emptyMap());
+
+        Class<?> loaderClass = Class.forName("jnr.ffi.provider.jffi.ReflectionLibraryLoader", true, loader);
+        Constructor<?> newLoader = loaderClass.getDeclaredConstructor();
+        newLoader.setAccessible(true);
+        Method load = loaderClass.getDeclaredMethod("loadLibrary", libraryClass, Class.class, Map.class, boolean.class);
+        load.setAccessible(true);
+        Object libc = load.invoke(newLoader.newInstance(), library, Native.LibC.class,
+                Collections.<LibraryOption, Object>emptyMap(), false);
+
+        assertTrue("proxy", Proxy.isProxyClass(libc.getClass()));
+        List<String> names = new ArrayList<String>();
+        for (Class<?> iface : libc.getClass().getInterfaces()) {
+            names.add(iface.getName());
+        }
+        assertTrue(names.toString(), proxies().contains(names));
+    }
+
+    @Test
+    public void testJniClassesExist() throws Exception {
+        Matcher m = Pattern.compile("\"name\": \"([^\"<]+)\",\\s*\"methods\"").matcher(read("jni-config.json"));
+        int found = 0;
+        while (m.find()) {
+            Class.forName(m.group(1), false, getClass().getClassLoader());
+            found++;
+        }
+        assertTrue("classes listed", found > 0);
+    }
+
+    @Test
+    public void testStubLibraryIncluded() throws Exception {
+        String json = read("resource-config.json");
+        Matcher m = Pattern.compile("\"pattern\": \"(.+)\"").matcher(json);
+        assertTrue("pattern", m.find());
+        Pattern resources = Pattern.compile(m.group(1).replace("\\\\", "\\"));
+        assertTrue("linux stub", resources.matcher("jni/x86_64-Linux/libjffi-1.2.so").matches());
+        assertTrue("darwin stub", resources.matcher("jni/Darwin/libjffi-1.2.jnilib").matches());
+
+        // the stub jffi would load on this platform is on the class path and matched
+        String dir = "jni/" + StubLoader.getPlatformName() + "/";
+        String found = null;
+        for (String lib : new String[] { "libjffi-1.2.so", "libjffi-1.2.jnilib", "libjffi-1.2.a" }) {
+            if (null != getClass().getClassLoader().getResource(dir + lib)) {
+                found = dir + lib;
+                break;
+            }
+        }
+        assertNotNull("stub library in " + dir, found);
+        assertTrue(found, resources.matcher(found).matches());
+    }
+}
@@ -0,0 +1,55 @@
+package jnr.unixsocket;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+import jnr.enxio.channels.NativeSelectorProvider;
+
+public class SelectableChannelBridgeTest {
+
+    @Test
+    public void mixedSelectTest() throws Exception {
+        ServerSocketChannel tcp = ServerSocketChannel.open();
+        tcp.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        Selector selector = NativeSelectorProvider.getInstance().openSelector();
+        SelectableChannelBridge bridge = SelectableChannelBridge.open(tcp);
+        try {
+            assertFalse("bridged channel is non-blocking", tcp.isBlocking());
+            SelectionKey tcpKey = bridge.register(selector, SelectionKey.OP_ACCEPT);
+            sp[0].configureBlocking(false);
+            SelectionKey unixKey = sp[0].register(selector, SelectionKey.OP_READ);
+
+            SocketChannel client = SocketChannel.open(tcp.getLocalAddress());
+            assertEquals("tcp ready", 1, selector.select(5000));
+            assertTrue("tcp key selected", selector.selectedKeys().contains(tcpKey));
+            assertSame("bridged channel", tcp, ((SelectableChannelBridge) tcpKey.channel()).channel());
+            SocketChannel accepted = tcp.accept();
+            assertNotNull("accepted", accepted);
+            selector.selectedKeys().clear();
+
+            sp[1].write(ByteBuffer.wrap(new byte[] { 1 }));
+            assertEquals("unix ready", 1, selector.select(5000));
+            assertTrue("unix key selected", selector.selectedKeys().contains(unixKey));
+            selector.selectedKeys().clear();
+
+            accepted.close();
+            client.close();
+        } finally {
+            selector.close();
+            bridge.close();
+            sp[0].close();
+            sp[1].close();
+        }
+        assertFalse("closing the bridge closes the channel", tcp.isOpen());
+    }
+}
@@ -0,0 +1,131 @@
+package jnr.unixsocket;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class SocketEventsTest {
+
+    @Before
+    public void setUp() {
+        // JFR is only available at runtime, the tests are built for Java 8 as well
+        Assume.assumeNotNull(SocketEvents.READ);
+    }
+
+    @Test
+    public void recordingTest() throws Exception {
+        Object recording = start("jnr.unixsocket.SocketRead", "jnr.unixsocket.SocketWrite");
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        sp[0].write(ByteBuffer.wrap(new byte[12]));
+        assertEquals("read", 12, sp[1].read(ByteBuffer.allocate(64)));
+        sp[0].close();
+        sp[1].close();
+
+        int reads = 0;
+        int writes = 0;
+        for (Object event : stop(recording)) {
+            String name = name(event);
+            if ("jnr.unixsocket.SocketRead".equals(name)) {
+                assertEquals("bytes read", 12L, bytes(event));
+                reads++;
+            } else if ("jnr.unixsocket.SocketWrite".equals(name)) {
+                assertEquals("bytes written", 12L, bytes(event));
+                writes++;
+            }
+        }
+        assertEquals("read events", 1, reads);
+        assertEquals("write events", 1, writes);
+    }
+
+    @Test
+    public void nonBlockingTest() throws Exception {
+        Object recording = start("jnr.unixsocket.SocketRead", "jnr.unixsocket.SocketWrite");
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        assertEquals("written", 5, sp[0].tryWrite(ByteBuffer.wrap(new byte[5])));
+        assertEquals("read", 5, sp[1].tryRead(ByteBuffer.allocate(64)));
+        sp[0].close();
+        sp[1].close();
+
+        List<String> names = new ArrayList<String>();
+        for (Object event : stop(recording)) {
+            names.add(name(event));
+            assertEquals("bytes", 5L, bytes(event));
+        }
+        assertTrue("read event", names.contains("jnr.unixsocket.SocketRead"));
+        assertTrue("write event", names.contains("jnr.unixsocket.SocketWrite"));
+    }
+
+    @Test
+    public void failedConnectTest() throws Exception {
+        File file = Files.createTempFile("jnr-unixsocket-tests", ".sock").toFile();
+        file.delete();
+        UnixSocketAddress address = new UnixSocketAddress(file);
+
+        Object recording = start("jnr.unixsocket.Connect");
+        UnixSocketChannel channel = UnixSocketChannel.open();
+        try {
+            channel.connect(address);
+            fail("nobody listens on " + file);
+        } catch (IOException e) {
+            // expected
+        } finally {
+            channel.close();
+        }
+
+        int connects = 0;
+        for (Object event : stop(recording)) {
+            if ("jnr.unixsocket.Connect".equals(name(event))) {
+                Method getString = event.getClass().getMethod("getString", String.class);
+                assertEquals("path", address.path(), getString.invoke(event, "path"));
+                connects++;
+            }
+        }
+        assertEquals("connect events", 1, connects);
+    }
+
+    private static Object start(String... names) throws Exception {
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        for (String name : names) {
+            Object settings = recordingClass.getMethod("enable", String.class).invoke(recording, name);
+            settings.getClass().getMethod("withThreshold", Duration.class).invoke(settings, Duration.ZERO);
+        }
+        recordingClass.getMethod("start").invoke(recording);
+        return recording;
+    }
+
+    private static List<?> stop(Object recording) throws Exception {
+        Class<?> recordingClass = recording.getClass();
+        recordingClass.getMethod("stop").invoke(recording);
+        Path file = Files.createTempFile("jnr-unixsocket-tests", ".jfr");
+        try {
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+            Method readAll = Class.forName("jdk.jfr.consumer.RecordingFile").getMethod("readAllEvents", Path.class);
+            return (List<?>) readAll.invoke(null, file);
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            Files.delete(file);
+        }
+    }
+
+    private static String name(Object event) throws Exception {
+        Object type = event.getClass().getMethod("getEventType").invoke(event);
+        return (String) type.getClass().getMethod("getName").invoke(type);
+    }
+
+    private static long bytes(Object event) throws Exception {
+        return (Long) event.getClass().getMethod("getLong", String.class).invoke(event, "bytes");
+    }
+}
@@ -0,0 +1,80 @@
+package jnr.unixsocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+import jnr.ffi.Platform;
+import jnr.ffi.Platform.OS;
+
+public class SocketFilterTest {
+
+    private static ByteBuffer encode(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String receive(UnixDatagramChannel ch) throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        if (ch.tryRead(buf) == 0) {
+            return null;
+        }
+        buf.flip();
+        return StandardCharsets.UTF_8.decode(buf).toString();
+    }
+
+    @Test
+    public void prefixProgramTest() {
+        SocketFilter f = SocketFilter.acceptIfPrefix("abcdefg".getBytes(StandardCharsets.UTF_8));
+        // word, half-word and byte comparisons followed by accept and drop
+        assertEquals("program length", 8, f.length());
+        assertEquals("same program", f, SocketFilter.acceptIfPrefix("abcdefg".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void longFieldTest() {
+        // the first comparison jumps over all others to the final drop
+        SocketFilter f = SocketFilter.acceptIfEquals(0, new byte[4 * 128]);
+        assertEquals("program length", 2 * 128 + 2, f.length());
+        try {
+            SocketFilter.acceptIfEquals(0, new byte[4 * 128 + 1]);
+            fail("Should have thrown IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            assertEquals("exception message", "Field too long", iae.getMessage());
+        }
+    }
+
+    @Test
+    public void invalidJumpTest() {
+        try {
+            SocketFilter.builder().jumpIfEqual(0, 256, 0);
+            fail("Should have thrown IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            assertEquals("exception message", "Invalid jump offset", iae.getMessage());
+        }
+    }
+
+    @Test
+    public void datagramFilterTest() throws Exception {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+
+        UnixDatagramChannel[] sp = UnixDatagramChannel.pair();
+        sp[0].attachFilter(SocketFilter.acceptIfPrefix("OK".getBytes(StandardCharsets.UTF_8)));
+
+        sp[1].write(encode("NO: dropped"));
+        sp[1].write(encode("O"));
+        sp[1].write(encode("OK: accepted"));
+        assertEquals("first accepted datagram", "OK: accepted", receive(sp[0]));
+        assertNull("no more datagrams", receive(sp[0]));
+
+        sp[0].detachFilter();
+        sp[1].write(encode("NO: accepted"));
+        assertEquals("unfiltered datagram", "NO: accepted", receive(sp[0]));
+
+        sp[0].close();
+        sp[1].close();
+    }
+}
@@ -0,0 +1,128 @@
+package jnr.unixsocket;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+import jnr.ffi.Platform;
+import jnr.ffi.Platform.OS;
+
+public class SpliceRelayTest {
+
+    private static String read(UnixSocketChannel ch, int len) throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf) < 0) {
+                break;
+            }
+        }
+        buf.flip();
+        return StandardCharsets.UTF_8.decode(buf).toString();
+    }
+
+    @Test
+    public void relayTest() throws Exception {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+
+        final UnixSocketChannel[] client = UnixSocketChannel.pair();
+        final UnixSocketChannel[] backend = UnixSocketChannel.pair();
+        final SpliceRelay relay = new SpliceRelay(client[1], backend[0]);
+        final Throwable[] failure = new Throwable[1];
+        Thread relayThread = new Thread("relay") {
+            @Override
+            public void run() {
+                try {
+                    relay.run();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+        relayThread.start();
+
+        client[0].write(ByteBuffer.wrap("request".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("forwarded", "request", read(backend[1], 7));
+        backend[1].write(ByteBuffer.wrap("response".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("returned", "response", read(client[0], 8));
+
+        // half-closes travel through the relay
+        client[0].shutdownOutput();
+        assertEquals("end of stream at backend", -1, backend[1].read(ByteBuffer.allocate(1)));
+        backend[1].write(ByteBuffer.wrap("late".getBytes(StandardCharsets.UTF_8)));
+        backend[1].shutdownOutput();
+        assertEquals("late data", "late", read(client[0], 4));
+        assertEquals("end of stream at client", -1, client[0].read(ByteBuffer.allocate(1)));
+
+        relayThread.join(5000);
+        assertFalse("relay finished", relayThread.isAlive());
+        assertNull("relay failure", failure[0]);
+        assertEquals("forward bytes", 7, relay.getForwardBytes());
+        assertEquals("backward bytes", 12, relay.getBackwardBytes());
+
+        relay.close();
+        for (UnixSocketChannel ch : new UnixSocketChannel[] { client[0], client[1], backend[0], backend[1] }) {
+            ch.close();
+        }
+    }
+
+    @Test
+    public void nonBlockingTest() throws Exception {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        sp[1].configureBlocking(false);
+        SpliceRelay relay = new SpliceRelay(sp[0], sp[1]);
+        try {
+            relay.run();
+            fail("relayed non-blocking channels");
+        } catch (IllegalBlockingModeException e) {
+            // expected
+        }
+        relay.close();
+        sp[0].close();
+        sp[1].close();
+    }
+
+    @Test
+    public void interruptTest() throws Exception {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+
+        final UnixSocketChannel[] client = UnixSocketChannel.pair();
+        final UnixSocketChannel[] backend = UnixSocketChannel.pair();
+        final SpliceRelay relay = new SpliceRelay(client[1], backend[0]);
+        final Throwable[] failure = new Throwable[1];
+        Thread relayThread = new Thread("relay") {
+            @Override
+            public void run() {
+                try {
+                    relay.run();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+        relayThread.start();
+
+        // the forward direction ends, the relay waits for the idle backward one
+        client[0].shutdownOutput();
+        assertEquals("end of stream at backend", -1, backend[1].read(ByteBuffer.allocate(1)));
+        relayThread.interrupt();
+        relayThread.join(5000);
+        assertFalse("relay finished", relayThread.isAlive());
+        assertTrue("interrupted", failure[0] instanceof InterruptedException);
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            assertFalse("helper stopped", "splice relay".equals(t.getName()));
+        }
+        assertEquals("backward direction shut down", -1, client[0].read(ByteBuffer.allocate(1)));
+
+        relay.close();
+        for (UnixSocketChannel ch : new UnixSocketChannel[] { client[0], client[1], backend[0], backend[1] }) {
+            ch.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package jnr.unixsocket;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+import jnr.constants.platform.Errno;
+import jnr.constants.platform.SocketLevel;
+import jnr.constants.platform.SocketOption;
+import jnr.unixsocket.SyscallInterceptor.Syscall;
+
+public class SyscallsTest {
+
+    private static final class Recorder implements SyscallInterceptor {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        volatile Syscall fail;
+
+        @Override
+        public Errno before(Syscall call, int fd, long requested) {
+            return call == fail ? Errno.EIO : null;
+        }
+
+        @Override
+        public void after(Syscall call, int fd, long requested, long result, Errno error, long nanos) {
+            if (Thread.currentThread() == thread) {
+                calls.add(call + " " + requested + " " + result + " " + (null == error ? null : error.name()));
+            }
+        }
+
+        private final Thread thread = Thread.currentThread();
+    }
+
+    @Test
+    public void interceptTest() throws Exception {
+        // enabled with -Djnr.unixsocket.syscalls.intercept=true by a dedicated surefire execution
+        Assume.assumeTrue(Syscalls.isEnabled());
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        Recorder recorder = new Recorder();
+        Syscalls.install(recorder);
+        try {
+            sp[0].write(ByteBuffer.wrap(new byte[5]));
+            sp[1].read(ByteBuffer.allocate(8));
+            assertEquals("calls", 2, recorder.calls.size());
+            assertEquals("write", "WRITE 5 5 null", recorder.calls.get(0));
+            assertEquals("read", "READ 8 5 null", recorder.calls.get(1));
+
+            // fault injection
+            recorder.fail = Syscall.SEND;
+            try {
+                sp[0].tryWrite(ByteBuffer.wrap(new byte[5]));
+                fail("injected failure");
+            } catch (IOException e) {
+                assertEquals("injected error", Errno.EIO.description(), e.getMessage());
+            }
+            assertEquals("failed call", "SEND 5 -1 EIO", recorder.calls.get(2));
+        } finally {
+            assertTrue("uninstalled", Syscalls.uninstall(recorder));
+        }
+        sp[0].close();
+        sp[1].close();
+    }
+
+    @Test
+    public void resultsCopiedBeforeInterceptorsTest() throws Exception {
+        Assume.assumeTrue(Syscalls.isEnabled());
+        File file = Files.createTempFile("jnr-unixsocket-tests", ".sock").toFile();
+        file.delete();
+        file.deleteOnExit();
+        UnixSocketAddress address = new UnixSocketAddress(file);
+        UnixServerSocketChannel server = UnixServerSocketChannel.open();
+        server.socket().bind(address);
+        UnixSocketChannel client = UnixSocketChannel.open(address);
+        UnixSocketChannel accepted = server.accept();
+        Native.setsockopt(client.getFD(), SocketLevel.SOL_SOCKET, SocketOption.SO_RCVTIMEO, 1500);
+        Credentials credentials = client.socket().getCredentials();
+
+        // an interceptor that issues calls of its own overwrites the per-thread structs
+        SyscallInterceptor clobber = new SyscallInterceptor() {
+            @Override
+            public Errno before(Syscall call, int fd, long requested) {
+                return null;
+            }
+
+            @Override
+            public void after(Syscall call, int fd, long requested, long result, Errno error, long nanos) {
+                NativeStructs structs = NativeStructs.current();
+                structs.putInt(-1);
+                structs.length(0);
+                structs.sockaddr().putInt(0, 0);
+            }
+        };
+        Syscalls.install(clobber);
+        try {
+            assertEquals("timeout", 1500, Native.getsockopt(client.getFD(), SocketLevel.SOL_SOCKET,
+                    SocketOption.SO_RCVTIMEO.intValue()));
+            assertTrue("send buffer", Native.getsockopt(client.getFD(), SocketLevel.SOL_SOCKET,
+                    SocketOption.SO_SNDBUF.intValue()) > 0);
+            assertEquals("peer", address.path(), UnixSocketChannel.fromFD(client.getFD()).getRemoteSocketAddress().path());
+            assertEquals("local", address.path(), UnixSocketChannel.fromFD(accepted.getFD()).getLocalSocketAddress().path());
+            assertEquals("credentials", credentials.toString(), client.socket().getCredentials().toString());
+        } finally {
+            assertTrue("uninstalled", Syscalls.uninstall(clobber));
+            accepted.close();
+            client.close();
+            server.close();
+        }
+    }
+}
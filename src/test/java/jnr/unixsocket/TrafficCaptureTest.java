@@ -0,0 +1,120 @@
+package jnr.unixsocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class TrafficCaptureTest {
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("jnr-unixsocket-tests", ".cap");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void captureTest() throws Exception {
+        TrafficCapture capture = TrafficCapture.open(file, 64 * 1024, 4);
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        sp[0].setCapture(capture);
+        long before = System.currentTimeMillis();
+
+        sp[0].write(ByteBuffer.wrap("hello".getBytes(StandardCharsets.UTF_8)));
+        ByteBuffer buf = ByteBuffer.allocateDirect(16);
+        buf.put((byte) 0);
+        sp[1].write(ByteBuffer.wrap("ok".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("read", 2, sp[0].read(buf));
+
+        // switched off at runtime
+        sp[0].setCapture(null);
+        sp[0].write(ByteBuffer.wrap("unseen".getBytes(StandardCharsets.UTF_8)));
+        capture.close();
+
+        List<TrafficCapture.Record> records = TrafficCapture.read(file);
+        assertEquals("records", 2, records.size());
+        TrafficCapture.Record out = records.get(0);
+        assertEquals("direction", TrafficCapture.Direction.OUT, out.getDirection());
+        assertEquals("length", 5, out.getLength());
+        assertEquals("snapped payload", "hell", new String(out.getPayload(), StandardCharsets.UTF_8));
+        assertEquals("fd", sp[0].getFD(), out.getFd());
+        assertTrue("timestamp", out.getTimestamp() / 1000000L >= before - 1000);
+        TrafficCapture.Record in = records.get(1);
+        assertEquals("direction", TrafficCapture.Direction.IN, in.getDirection());
+        assertEquals("payload from a direct buffer", "ok", new String(in.getPayload(), StandardCharsets.UTF_8));
+        sp[0].close();
+        sp[1].close();
+    }
+
+    @Test
+    public void ringTest() throws Exception {
+        TrafficCapture capture = TrafficCapture.open(file, 1000, 100);
+        ByteBuffer payload = ByteBuffer.allocate(100);
+        for (int i = 0; i < 50; i++) {
+            payload.clear();
+            payload.putInt(0, i);
+            capture.record(TrafficCapture.Direction.OUT, 3, payload, 0, 100 - i);
+        }
+        assertEquals("written", 50, capture.getRecordsWritten());
+        assertTrue("overwritten", capture.getRecordsOverwritten() > 0);
+        capture.close();
+
+        List<TrafficCapture.Record> records = TrafficCapture.read(file);
+        assertEquals("kept", 50 - capture.getRecordsOverwritten(), records.size());
+        for (int i = 0; i < records.size(); i++) {
+            int n = 50 - records.size() + i;
+            assertEquals("oldest first", n, ByteBuffer.wrap(records.get(i).getPayload()).getInt());
+            assertEquals("length", 100 - n, records.get(i).getLength());
+        }
+    }
+
+    @Test
+    public void samplingTest() throws Exception {
+        TrafficCapture capture = TrafficCapture.open(file, 1 << 20, 16);
+        capture.setSampling(10);
+        ByteBuffer payload = ByteBuffer.allocate(16);
+        for (int i = 0; i < 10000; i++) {
+            capture.record(TrafficCapture.Direction.IN, 3, payload, 0, 16);
+        }
+        long written = capture.getRecordsWritten();
+        assertTrue("sampled " + written, written > 500 && written < 2000);
+        capture.close();
+    }
+
+    @Test
+    public void capacityTest() throws Exception {
+        for (int[] args : new int[][] { { 0, 0 }, { 40, 10 }, { 4 * 48 - 8, 10 }, { 1024, -1 } }) {
+            try {
+                TrafficCapture.open(file, args[0], args[1]).close();
+                fail("capacity " + args[0] + " with snap length " + args[1]);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        TrafficCapture.open(file, 4 * 48, 10).close();
+    }
+
+    @Test
+    public void failureTest() throws Exception {
+        TrafficCapture capture = TrafficCapture.open(file, 1024, 16);
+        ByteBuffer payload = ByteBuffer.allocateDirect(8);
+        capture.record(TrafficCapture.Direction.OUT, 3, payload, 4, 8);
+        assertEquals("failures", 1, capture.getRecordFailures());
+        capture.record(TrafficCapture.Direction.OUT, 3, payload, 0, 8);
+        assertEquals("written", 1, capture.getRecordsWritten());
+        capture.close();
+        assertEquals("records", 1, TrafficCapture.read(file).size());
+    }
+}
@@ -1,6 +1,8 @@
 package jnr.unixsocket;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.regex.Pattern;
 
@@ -54,6 +56,28 @@ public class UnixDatagramChannelTest {
         assertTrue("socket path pattern matches " + RE, a.path().matches(RE));
     }
 
+    @Test
+    public void testTryReceive() throws Exception {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+
+        final String ABSTRACT = "\000foobarsender";
+
+        UnixDatagramChannel server = UnixDatagramChannel.open().bind(null);
+        UnixDatagramChannel client = UnixDatagramChannel.open().bind(new UnixSocketAddress(ABSTRACT));
+        ByteBuffer buf = ByteBuffer.allocate(16);
+
+        assertNull("nothing to receive", server.tryReceive(buf));
+        assertTrue("channel is blocking", server.isBlocking());
+
+        client.send(ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8)), server.getLocalSocketAddress());
+        UnixSocketAddress sender = server.tryReceive(buf);
+        assertEquals("sender path", ABSTRACT, sender.path());
+        assertEquals("received", 3, buf.position());
+
+        client.close();
+        server.close();
+    }
+
     @Test
     public void testAbstractNamespace() throws Exception {
         Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
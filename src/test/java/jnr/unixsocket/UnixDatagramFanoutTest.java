@@ -0,0 +1,111 @@
+package jnr.unixsocket;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class UnixDatagramFanoutTest {
+    private static final String DATA = "foo bar baz";
+
+    private File makeSocketFile() throws IOException {
+        File socketFile = Files.createTempFile("jnr-unixsocket-test", ".sock").toFile();
+        socketFile.delete();
+        socketFile.deleteOnExit();
+        return socketFile;
+    }
+
+    private static String receive(UnixDatagramChannel ch) throws IOException {
+        ByteBuffer rxbuf = ByteBuffer.allocate(1024);
+        ch.receive(rxbuf);
+        rxbuf.flip();
+        return StandardCharsets.UTF_8.decode(rxbuf).toString();
+    }
+
+    @Test
+    public void fanoutTest() throws Exception {
+        List<UnixDatagramChannel> servers = new ArrayList<UnixDatagramChannel>();
+        List<UnixSocketAddress> targets = new ArrayList<UnixSocketAddress>();
+        for (int i = 0; i < 3; i++) {
+            UnixSocketAddress address = new UnixSocketAddress(makeSocketFile());
+            servers.add(UnixDatagramChannel.open().bind(address));
+            targets.add(address);
+        }
+        // a destination nobody listens on is skipped
+        targets.add(new UnixSocketAddress(makeSocketFile()));
+
+        UnixDatagramFanout fanout = new UnixDatagramFanout(2);
+        try {
+            ByteBuffer txbuf = StandardCharsets.UTF_8.encode(DATA);
+            assertEquals("delivered", 3, fanout.send(txbuf, targets));
+            assertFalse("source consumed", txbuf.hasRemaining());
+            assertEquals("pooled sockets", 2, fanout.size());
+            for (UnixDatagramChannel server : servers) {
+                assertEquals("received data", DATA, receive(server));
+            }
+        } finally {
+            fanout.close();
+            for (UnixDatagramChannel server : servers) {
+                server.close();
+            }
+        }
+    }
+
+    @Test
+    public void fullDestinationTest() throws Exception {
+        UnixSocketAddress fullAddress = new UnixSocketAddress(makeSocketFile());
+        UnixSocketAddress otherAddress = new UnixSocketAddress(makeSocketFile());
+        UnixDatagramChannel full = UnixDatagramChannel.open().bind(fullAddress);
+        UnixDatagramChannel other = UnixDatagramChannel.open().bind(otherAddress);
+        UnixDatagramFanout fanout = new UnixDatagramFanout(2);
+        try {
+            // fill the receive queue of a consumer that does not read
+            int sent = 0;
+            while (fanout.send(StandardCharsets.UTF_8.encode(DATA), fullAddress) > 0) {
+                assertTrue("receive queue never filled", ++sent < 100000);
+            }
+            assertEquals("dropped", 1, fanout.getDropped());
+
+            ByteBuffer txbuf = StandardCharsets.UTF_8.encode(DATA);
+            assertEquals("delivered", 1, fanout.send(txbuf, Arrays.asList(fullAddress, otherAddress)));
+            assertEquals("dropped", 2, fanout.getDropped());
+            assertEquals("received data", DATA, receive(other));
+        } finally {
+            fanout.close();
+            full.close();
+            other.close();
+        }
+    }
+
+    @Test
+    public void reconnectTest() throws Exception {
+        File socketFile = makeSocketFile();
+        UnixSocketAddress address = new UnixSocketAddress(socketFile);
+        UnixDatagramChannel server = UnixDatagramChannel.open().bind(address);
+        UnixDatagramFanout fanout = new UnixDatagramFanout(4);
+        try {
+            fanout.send(StandardCharsets.UTF_8.encode(DATA), address);
+            assertEquals("received data", DATA, receive(server));
+
+            // restart the consumer on the same path
+            server.close();
+            socketFile.delete();
+            server = UnixDatagramChannel.open().bind(address);
+
+            fanout.send(StandardCharsets.UTF_8.encode(DATA), address);
+            assertEquals("received data after restart", DATA, receive(server));
+            assertEquals("pooled sockets", 1, fanout.size());
+        } finally {
+            fanout.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class UnixEventLoopGroupTest {
+
+    private static final class EchoHandler implements UnixEventLoopGroup.StreamHandler {
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        final UnixEventLoopGroup group;
+        final CountDownLatch closed;
+
+        EchoHandler(UnixEventLoopGroup group, int connections) {
+            this.group = group;
+            closed = new CountDownLatch(connections);
+        }
+
+        @Override
+        public void opened(UnixSocketChannel channel) {
+            threads.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void received(UnixSocketChannel channel, ByteBuffer data) throws IOException {
+            group.write(channel, data);
+        }
+
+        @Override
+        public void closed(UnixSocketChannel channel) {
+            closed.countDown();
+        }
+    }
+
+    @Test
+    public void echoServerTest() throws Exception {
+        Path socketPath = Files.createTempFile("jnr-unixsocket-tests", ".sock");
+        Files.delete(socketPath);
+        socketPath.toFile().deleteOnExit();
+        UnixSocketAddress address = new UnixSocketAddress(socketPath.toFile());
+
+        UnixEventLoopGroup group = new UnixEventLoopGroup(3);
+        group.setMaxReadsPerWakeup(1);
+        UnixServerSocketChannel server = UnixServerSocketChannel.open();
+        server.socket().bind(address);
+        EchoHandler handler = new EchoHandler(group, 6);
+        group.serve(server, handler);
+
+        UnixSocketChannel[] clients = new UnixSocketChannel[6];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = UnixSocketChannel.open(address);
+        }
+        for (int i = 0; i < clients.length; i++) {
+            byte[] msg = ("hello " + i).getBytes(StandardCharsets.UTF_8);
+            clients[i].write(ByteBuffer.wrap(msg));
+            ByteBuffer reply = ByteBuffer.allocate(msg.length);
+            while (reply.hasRemaining()) {
+                assertTrue("echo", clients[i].read(reply) > 0);
+            }
+            assertEquals("echo", "hello " + i, new String(reply.array(), StandardCharsets.UTF_8));
+        }
+        assertEquals("connections spread over the loops", 3, handler.threads.size());
+
+        // graceful shutdown serves the open connections until they close
+        group.shutdown();
+        assertFalse("still serving", group.awaitTermination(100, TimeUnit.MILLISECONDS));
+        clients[0].write(ByteBuffer.wrap(new byte[] { 42 }));
+        ByteBuffer reply = ByteBuffer.allocate(1);
+        assertEquals("echo after shutdown", 1, clients[0].read(reply));
+        for (UnixSocketChannel client : clients) {
+            client.close();
+        }
+        assertTrue("terminated", group.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue("handlers notified", handler.closed.await(1, TimeUnit.SECONDS));
+        assertFalse("server closed", server.isOpen());
+    }
+
+    @Test
+    public void writeQueueTest() throws Exception {
+        UnixEventLoopGroup group = new UnixEventLoopGroup(1);
+        EchoHandler handler = new EchoHandler(group, 2);
+        UnixSocketChannel[] slow = UnixSocketChannel.pair();
+        UnixSocketChannel[] fast = UnixSocketChannel.pair();
+        group.register(slow[0], handler);
+        group.register(fast[0], handler);
+
+        // far more than the socket buffers hold, while the echo is not read
+        byte[] data = new byte[4 * 1024 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ByteBuffer src = ByteBuffer.wrap(data);
+        while (src.hasRemaining()) {
+            slow[1].write(src);
+        }
+
+        // the loop is not stuck writing to the slow reader
+        fast[1].write(ByteBuffer.wrap(new byte[] { 42 }));
+        ByteBuffer reply = ByteBuffer.allocate(1);
+        assertEquals("echo", 1, fast[1].read(reply));
+
+        ByteBuffer echo = ByteBuffer.allocate(data.length);
+        while (echo.hasRemaining()) {
+            assertTrue("echo", slow[1].read(echo) > 0);
+        }
+        assertTrue("echo in order", Arrays.equals(data, echo.array()));
+
+        slow[1].close();
+        fast[1].close();
+        assertTrue("handlers notified", handler.closed.await(5, TimeUnit.SECONDS));
+        group.close();
+    }
+
+    @Test
+    public void addDuringShutdownTest() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            final UnixEventLoopGroup group = new UnixEventLoopGroup(1);
+            final AtomicInteger closed = new AtomicInteger();
+            UnixEventLoopGroup.StreamHandler handler = new UnixEventLoopGroup.StreamHandler() {
+                @Override
+                public void opened(UnixSocketChannel channel) {
+                }
+
+                @Override
+                public void received(UnixSocketChannel channel, ByteBuffer data) {
+                }
+
+                @Override
+                public void closed(UnixSocketChannel channel) {
+                    closed.incrementAndGet();
+                }
+            };
+            Thread stopper = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    group.shutdownNow();
+                }
+            });
+            stopper.start();
+            int added = 0;
+            List<UnixSocketChannel> channels = new ArrayList<UnixSocketChannel>();
+            while (true) {
+                UnixSocketChannel[] sp = UnixSocketChannel.pair();
+                sp[1].close();
+                try {
+                    group.register(sp[0], handler);
+                } catch (RejectedExecutionException e) {
+                    sp[0].close();
+                    break;
+                }
+                channels.add(sp[0]);
+                added++;
+            }
+            stopper.join();
+            assertTrue("terminated", group.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals("every added channel closed", added, closed.get());
+            for (UnixSocketChannel channel : channels) {
+                assertFalse("closed", channel.isOpen());
+            }
+        }
+    }
+
+    @Test
+    public void datagramTest() throws Exception {
+        final UnixDatagramChannel[] sp = UnixDatagramChannel.pair();
+        final CountDownLatch received = new CountDownLatch(3);
+        UnixEventLoopGroup group = new UnixEventLoopGroup(1);
+        group.register(sp[0], new UnixEventLoopGroup.DatagramHandler() {
+            @Override
+            public void received(UnixDatagramChannel channel, UnixSocketAddress sender, ByteBuffer data) {
+                assertEquals("datagram size", 4, data.remaining());
+                received.countDown();
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            sp[1].write(ByteBuffer.wrap(new byte[4]));
+        }
+        assertTrue("received", received.await(5, TimeUnit.SECONDS));
+
+        group.close();
+        assertFalse("closed on shutdown", sp[0].isOpen());
+        sp[1].close();
+    }
+
+    @Test
+    public void taskTest() throws Exception {
+        UnixEventLoopGroup group = new UnixEventLoopGroup(2);
+        final CountDownLatch ran = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            group.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ran.countDown();
+                }
+            });
+        }
+        assertTrue("tasks ran", ran.await(5, TimeUnit.SECONDS));
+        group.shutdown();
+        assertTrue("terminated", group.awaitTermination(5, TimeUnit.SECONDS));
+        try {
+            group.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("task accepted after shutdown");
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            // expected
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package jnr.unixsocket;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.concurrent.CountDownLatch;
 
 import org.junit.Test;
@@ -53,6 +56,131 @@ public class UnixSocketChannelTest {
         assertEquals("local socket path", ABSTRACT, ch.getLocalSocketAddress().path());
     }
 
+    @Test
+    public void testAddressEquality() throws Exception {
+        Path socketPath = getTemporarySocketFileName();
+        UnixSocketAddress a = new UnixSocketAddress(socketPath.toFile());
+        UnixSocketChannel ch = UnixSocketChannel.open();
+        ch.bind(a);
+
+        UnixSocketAddress local = ch.getLocalSocketAddress();
+        assertEquals("bound address", a, local);
+        assertEquals("bound address hash", a.hashCode(), local.hashCode());
+        assertEquals("local socket path", socketPath.toString(), local.path());
+        assertFalse("different address", new UnixSocketAddress(socketPath + "x").equals(local));
+    }
+
+    @Test
+    public void testAbstractAddressEquality() throws Exception {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+
+        final String ABSTRACT = "\000foobarqux";
+
+        UnixSocketAddress a = new UnixSocketAddress(ABSTRACT);
+        UnixSocketChannel ch = UnixSocketChannel.open();
+        ch.bind(a);
+        UnixSocketAddress local = ch.getLocalSocketAddress();
+        assertEquals("bound address", a, local);
+        assertEquals("bound address hash", a.hashCode(), local.hashCode());
+        assertFalse("regular namespace differs", new UnixSocketAddress("foobarqux").equals(local));
+    }
+
+    @Test
+    public void testTryRead() throws Exception {
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        ByteBuffer buf = ByteBuffer.allocate(16);
+
+        assertTrue("channel is blocking", sp[0].isBlocking());
+        assertEquals("nothing to read", 0, sp[0].tryRead(buf));
+
+        assertEquals("written", 3, sp[1].tryWrite(ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8))));
+        assertEquals("read", 3, sp[0].tryRead(buf));
+        assertEquals("data", "foo", new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8));
+        assertTrue("channel is still blocking", sp[0].isBlocking());
+
+        sp[1].close();
+        assertEquals("end of stream", -1, sp[0].tryRead(buf));
+        sp[0].close();
+    }
+
+    @Test
+    public void testLoopbackPair() throws Exception {
+        final UnixSocketChannel[] sp = UnixSocketChannel.loopbackPair();
+        ByteBuffer buf = ByteBuffer.allocate(64);
+
+        assertEquals("written", 3, sp[0].write(ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8))));
+        assertEquals("read", 3, sp[1].read(buf));
+        assertEquals("data", "foo", new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8));
+        assertTrue("still in memory", sp[1].isLoopbackAttached());
+
+        // a blocked reader is woken up by the writer
+        final CountDownLatch written = new CountDownLatch(1);
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                    sp[1].write(ByteBuffer.wrap("bar".getBytes(StandardCharsets.UTF_8)));
+                    written.countDown();
+                } catch (Exception e) {
+                    // reported by the assertion below
+                }
+            }
+        };
+        writer.start();
+        buf.clear();
+        assertEquals("read", 3, sp[0].read(buf));
+        writer.join();
+        assertEquals("writer finished", 0, written.getCount());
+
+        // buffered bytes survive the fallback to the sockets
+        sp[0].write(ByteBuffer.wrap("baz".getBytes(StandardCharsets.UTF_8)));
+        sp[1].configureBlocking(false);
+        assertFalse("detached", sp[0].isLoopbackAttached());
+        buf.clear();
+        assertEquals("read", 3, sp[1].read(buf));
+        assertEquals("data", "baz", new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8));
+
+        sp[0].close();
+        buf.clear();
+        assertEquals("end of stream", -1, sp[1].tryRead(buf));
+        sp[1].close();
+    }
+
+    @Test
+    public void testLoopbackDetachWithReader() throws Exception {
+        final UnixSocketChannel[] sp = UnixSocketChannel.loopbackPair();
+        final byte[] data = new byte[64 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        final ByteBuffer received = ByteBuffer.allocate(data.length);
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (received.hasRemaining() && sp[1].read(received) > 0) {
+                        // keep reading
+                    }
+                } catch (IOException e) {
+                    // reported by the assertion below
+                }
+            }
+        };
+        reader.start();
+
+        // detach half way through while the reader drains the ring and then the socket
+        sp[0].write(ByteBuffer.wrap(data, 0, data.length / 2));
+        sp[0].getFD();
+        assertFalse("detached", sp[1].isLoopbackAttached());
+        sp[0].write(ByteBuffer.wrap(data, data.length / 2, data.length / 2));
+        reader.join(10000);
+        assertFalse("reader finished", reader.isAlive());
+        assertTrue("data", Arrays.equals(data, received.array()));
+        sp[0].close();
+        sp[1].close();
+    }
+
     @Test
     public void testInterruptRead() throws Exception {
         Path socketPath = getTemporarySocketFileName();
@@ -0,0 +1,80 @@
+package jnr.unixsocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+import jnr.constants.platform.Sock;
+
+public class UnixSocketDiagTest {
+    private UnixSocketDiag diag;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(UnixSocketDiag.isSupported());
+        try {
+            diag = UnixSocketDiag.open();
+            diag.all();
+        } catch (IOException e) {
+            // no unix_diag in this kernel
+            Assume.assumeNoException(e);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (null != diag) {
+            diag.close();
+        }
+    }
+
+    @Test
+    public void connectedPairTest() throws Exception {
+        UnixSocketChannel[] sp = UnixSocketChannel.pair();
+        sp[1].write(ByteBuffer.wrap(new byte[100]));
+
+        UnixSocketInfo info = diag.get(sp[0]);
+        assertEquals("inode", UnixSocketDiag.inode(sp[0]), info.getInode());
+        assertEquals("type", Sock.SOCK_STREAM, info.getType());
+        assertEquals("state", UnixSocketInfo.State.CONNECTED, info.getState());
+        assertEquals("peer", UnixSocketDiag.inode(sp[1]), info.getPeerInode());
+        assertEquals("unread bytes", 100, info.getReceiveQueue());
+        assertTrue("receive buffer", info.getReceiveBufferSize() > 0);
+        assertNull("unbound", info.getPath());
+
+        sp[0].close();
+        sp[1].close();
+        assertNull("gone", diag.get(info.getInode()));
+    }
+
+    @Test
+    public void listeningTest() throws Exception {
+        UnixSocketAddress address = new UnixSocketAddress("\000jnr-diag-test-" + System.nanoTime());
+        UnixServerSocketChannel server = UnixServerSocketChannel.open();
+        server.socket().bind(address, 7);
+        UnixSocketChannel client = UnixSocketChannel.open(address);
+
+        UnixSocketInfo info = diag.get(server);
+        assertEquals("state", UnixSocketInfo.State.LISTENING, info.getState());
+        assertEquals("path", address.path(), info.getPath());
+        assertEquals("pending connections", 1, info.getReceiveQueue());
+        assertEquals("backlog", 7, info.getSendQueue());
+
+        boolean found = false;
+        List<UnixSocketInfo> all = diag.all();
+        for (UnixSocketInfo i : all) {
+            found |= i.getInode() == info.getInode();
+        }
+        assertTrue("listed in dump", found);
+
+        client.close();
+        server.close();
+    }
+}
@@ -0,0 +1,53 @@
+package jnr.unixsocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import jnr.constants.platform.Fcntl;
+import jnr.ffi.Platform;
+import jnr.ffi.Platform.OS;
+import jnr.posix.POSIX;
+import jnr.posix.POSIXFactory;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class UnixSocketProcessTest {
+
+    @Test
+    public void echoTest() throws Exception {
+        UnixSocketProcess p = UnixSocketProcess.spawn(
+                Arrays.asList("sh", "-c", "read line <&5; echo \"got $line\" >&5; exit 7"), 5);
+        try {
+            UnixSocketChannel ch = p.channel();
+            ch.write(ByteBuffer.wrap("hello\n".getBytes(StandardCharsets.UTF_8)));
+
+            ByteBuffer buf = ByteBuffer.allocate(64);
+            while (ch.read(buf) > 0) {
+                continue;
+            }
+            assertEquals("reply", "got hello\n",
+                    new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8));
+            assertEquals("exit code", 7, p.waitFor());
+        } finally {
+            p.close();
+        }
+    }
+
+    @Test
+    public void closeOnExecPairTest() throws Exception {
+        Assume.assumeTrue(OS.LINUX == Platform.getNativePlatform().getOS());
+        POSIX posix = POSIXFactory.getNativePOSIX();
+        UnixSocketChannel[] sp = UnixSocketChannel.pair(0x80000);
+        try {
+            for (UnixSocketChannel ch : sp) {
+                assertEquals("FD_CLOEXEC", 1, posix.fcntl(ch.getFD(), Fcntl.F_GETFD) & 1);
+            }
+        } finally {
+            sp[0].close();
+            sp[1].close();
+        }
+    }
+}